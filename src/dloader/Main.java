@@ -1,13 +1,29 @@
 package dloader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.*;
 
 import javax.swing.SwingUtilities;
 
+import org.jdom2.Element;
+
+import dloader.cache.BinaryCacheFile;
+import dloader.cache.BoundedCacheStore;
+import dloader.cache.CacheFiles;
+import dloader.cache.CacheStore;
+import dloader.cache.CacheJournal;
+import dloader.cache.ChangeLog;
+import dloader.cache.ChangeTrackingCacheStore;
+import dloader.cache.MemoryCacheStore;
+import dloader.cache.PageArchive;
+import dloader.cache.ShardedCacheStore;
 import dloader.gui.GUI;
+import dloader.pagejob.RefreshPolicy;
 
 /**
  * Starting thread. May continue in a single console thread or spawn GUI.
@@ -25,11 +41,29 @@ public class Main {
 	public static boolean logToCon = true; //-s
 	public static boolean logToFile = false; //-l
 	public static boolean isInConsoleMode = false; //-c
+	public static boolean binaryCache = false; //-b
+	public static String cacheEngine = "xml"; //-e
+	public static boolean noWaitForCache = false; //-n
+	public static boolean compressedCache = false; //-z
+	public static boolean streamingParse = false; //-q
+	public static boolean reparseArchive = false; //-p
+	public static boolean checkPageKind = false; //-k
+	public static PageArchive archive; //-a, null if pages are not archived
+	public static RefreshPolicy refreshPolicy = new RefreshPolicy(); //-m
 	// user current directory
 	public static String saveTo = Paths.get("").toAbsolutePath().toString(); 
 
 	public static Logger logger;
-	public static XMLCache cache;
+	public static CacheStore cache;
+	/**
+	 * change log of a file-backed cache, null for in-memory ones
+	 */
+	private static ChangeLog changeLog;
+	/**
+	 * sharded cache, if selected
+	 */
+	private static ShardedCacheStore shardedCache;
+	private static boolean archivePages = false;
 	public static GUI gui;
 	
 
@@ -64,6 +98,34 @@ public class Main {
 									+ "\tso if it finds a web page that was parsed before and cached, the page won't be downloaded.\n"
 									+ "\tIf you want all pages to be re-downloaded anew - delete '"+xmlFileName+"' or use next key:\n"
 									+ "\t\t-rescan\t forces all pages to be downloaded, cache gets updated.\n"
+									+ "\tCache updates are journaled into '"+xmlFileName+".journal' as they happen, so even \n"
+									+ "\ta killed run keeps the pages it went through.\n"
+									+ "\tPages added, changed and removed by each run are listed in '"+xmlFileName+".changes'\n"
+									+ "\t(see 'changes' command of dloader.cache.CacheTool).\n"
+									+ "\t\t-binary\t keeps cache in compact binary file instead of XML, existing XML cache\n"
+									+ "\t\t\t is converted on first use (see dloader.cache.CacheTool to convert it back).\n"
+									+ "\t\t-zip\t keeps XML cache gzipped in '"+xmlFileName+CacheFiles.COMPRESSED_EXTENSION
+									+ "', existing XML cache is compressed on first use.\n"
+									+ "\t\t-e<engine>\t selects cache storage engine: 'xml' (default, the cache file),\n"
+									+ "\t\t\t 'memory' (nothing is read or saved), 'bounded:<N>' (same, but keeps at most N pages)\n"
+									+ "\t\t\t 'tiered:<N>' (binary cache file with at most N most used pages kept in memory)\n"
+									+ "\t\t\t or 'sharded' (a cache file per artist host in '"
+									+ ShardedCacheStore.directoryFor(Paths.get(xmlFileName)) + "', only files of\n"
+									+ "\t\t\t artists visited are read and saved; -binary applies to them too).\n"
+									+ "\tXML cache is read in background while the program starts working, pages not read yet\n"
+									+ "\tare waited for, unless:\n"
+									+ "\t\t-nowait\t downloads pages not read from cache yet instead of waiting for them.\n"
+									+ "\t\t-quick\t reads album and discography pages as they are downloaded, without\n"
+									+ "\t\t\t building their documents (less memory and time for big pages).\n"
+									+ "\tPages found in cache are checked with the server (only changed ones are downloaded), unless:\n"
+									+ "\t\t-m<hours>\t skips the check for pages checked less than that many hours ago,\n"
+									+ "\t\t\t -m<D>,<A>,<T> sets it for discography, album and track pages separately.\n"
+									+ "\t\t-kindcheck tells track, album and artist pages by what is downloaded, not only by\n"
+									+ "\t\t\t their address, so pages guessed wrong are parsed right without downloading them again.\n"
+									+ "\t\t-archive keeps every page downloaded, gzipped, in '"
+									+ PageArchive.directoryFor(Paths.get(xmlFileName)) + "'.\n"
+									+ "\t\t-parse\t parses archived pages anew into cache, using all processors and no network,\n"
+									+ "\t\t\t for when parsing rules change (files are not saved, runs without GUI).\n"
 									);
 					System.exit(0);
 				case 's': logToCon = false; break;
@@ -81,6 +143,29 @@ public class Main {
 				case 'f': forceTagging = true; break;
 				case 'r': allowFromCache = false; break;
 				case 'c': isInConsoleMode = true; break;
+				case 'b': binaryCache = true; break;
+				case 'n': noWaitForCache = true; break;
+				case 'z': compressedCache = true; break;
+				case 'q': streamingParse = true; break;
+				case 'a': archivePages = true; break;
+				case 'p': reparseArchive = archivePages = true; break;
+				case 'k': checkPageKind = true; break;
+				case 'm':
+					try {
+						refreshPolicy = RefreshPolicy.parse(s.substring(2));
+					} catch (IllegalArgumentException e) {
+						System.out
+								.println("-m must specify hours or <D>,<A>,<T> hours. Default value will be used.");
+					}
+					break;
+				case 'e': 
+					cacheEngine = s.substring(2).toLowerCase(); 
+					if (!cacheEngine.matches("xml|memory|sharded|(bounded|tiered)(:[1-9]\\d*)?")) {
+						cacheEngine = "xml";
+						System.out
+								.println("-e must specify 'xml', 'memory', 'bounded:<N>', 'tiered:<N>' or 'sharded'. Default value will be used.");
+					}
+					break;
 			} //switch
 		} //for
 	}
@@ -134,8 +219,11 @@ public class Main {
 			logger.info( String.format(
 					"Starting to download%n from <%s>%n into <%s> %s%n",
 					baseURL, saveTo, forceTagging?"with retagging existing files.":""));
-			cache = new XMLCache(xmlFileName);
-			if (isInConsoleMode) {
+			long startTime = System.currentTimeMillis();
+			cache = openCache();
+			if (archivePages)
+				archive = new PageArchive(PageArchive.directoryFor(Paths.get(xmlFileName)));
+			if (isInConsoleMode || reparseArchive) {
 				SoloThreadConsoleDloader stcd = new SoloThreadConsoleDloader();
 				stcd.getThingsMoving();
 			} else {
@@ -154,17 +242,41 @@ public class Main {
 				gui.getEventDispatchThread().join(); // wait till GUI closes
 			}
 			
-			cache.saveCache();
+			cache.flush();
 			
 			logger.info( String.format("On total: %d files saved from net (%d bytes) + %d pages viewed%n", 
 					StatisticGatherer.totalFileDownloadFinished.intValue(), 
 					StatisticGatherer.totalBytesDownloaded.longValue(),
 					StatisticGatherer.totalPageDownloadFinished.intValue() 
 					));
+			int pages = StatisticGatherer.totalPageDownloadFinished.intValue();
+			int parsed = pages - StatisticGatherer.totalPageParseSkipped.intValue();
+			if (pages > 0)
+				logger.info( String.format("Per page: %d ms fetching; %d of %d pages parsed (body changed), %d ms parsing, %d KB allocated by parser%n", 
+						StatisticGatherer.totalPageFetchNanos.longValue() / pages / 1000000,
+						parsed, pages,
+						StatisticGatherer.totalPageParseNanos.longValue() / Math.max(parsed, 1) / 1000000,
+						StatisticGatherer.totalPageParseAllocated.longValue() / Math.max(parsed, 1) / 1024));
+			if (!StatisticGatherer.pageTypeMisguesses.isEmpty())
+				logger.info( String.format("Page types guessed wrong: %s%n", StatisticGatherer.pageTypeMisguesses));
+			logger.info( String.format("Run took %d s with '%s' cache engine%n", 
+					(System.currentTimeMillis() - startTime) / 1000, cacheEngine));
+			if (changeLog != null)
+				logger.info( String.format("Cache generation %d: %d pages added, %d changed, %d removed%n", 
+						changeLog.getGeneration(), changeLog.getCount(ChangeLog.Kind.ADDED), 
+						changeLog.getCount(ChangeLog.Kind.CHANGED), changeLog.getCount(ChangeLog.Kind.REMOVED)));
+			if (shardedCache != null)
+				logger.info( String.format("Cache shards: %d of %d used%n", 
+						shardedCache.getOpenShardCount(), shardedCache.shardNames().size()));
+			if (cache instanceof BoundedCacheStore) {
+				BoundedCacheStore tier = (BoundedCacheStore) cache;
+				logger.info( String.format("In-memory cache: %d hits, %d misses, %d evictions%n", 
+						tier.getHits(), tier.getMisses(), tier.getEvictions()));
+			}
 		} catch (Throwable e) {
 			try {
 				// an attempt to salvage metadata at least
-				cache.saveCache();
+				if (cache != null) cache.flush();
 			} catch (IOException e1) {
 				logger.log(Level.SEVERE, "", e1);
 			} finally {
@@ -173,6 +285,126 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Creates cache store for the engine selected by -e key.
+	 * @return new cache store
+	 * @throws IOException
+	 */
+	private static CacheStore openCache() throws IOException {
+		String[] engine = cacheEngine.split(":");
+		switch (engine[0]) {
+		case "memory": 
+			return new MemoryCacheStore();
+		case "bounded": 
+			return new BoundedCacheStore(engine.length > 1? 
+					Integer.parseInt(engine[1]): BoundedCacheStore.DEFAULT_CAPACITY);
+		case "tiered":
+			// XML cache keeps every page in memory, binary one only those not saved yet
+			binaryCache = true;
+			return new BoundedCacheStore(engine.length > 1? 
+					Integer.parseInt(engine[1]): BoundedCacheStore.DEFAULT_CAPACITY, trackChanges(openXMLCache()));
+		case "sharded":
+			return trackChanges(openShardedCache());
+		default:
+			return trackChanges(openXMLCache());
+		}
+	}
+	
+	/**
+	 * Opens cache split into per-host files. If there are no shards yet, 
+	 * they are created from the single cache file.
+	 * @throws IOException
+	 */
+	private static ShardedCacheStore openShardedCache() throws IOException {
+		Path xmlPath = Paths.get(xmlFileName);
+		Path directory = ShardedCacheStore.directoryFor(xmlPath);
+		boolean existed = Files.isDirectory(directory);
+		ShardedCacheStore store = new ShardedCacheStore(directory, 
+				binaryCache? BinaryCacheFile.FILE_EXTENSION: 
+					compressedCache? ".xml" + CacheFiles.COMPRESSED_EXTENSION: ".xml");
+		if (noWaitForCache)
+			store.setLoadPolicy(XMLCache.LoadPolicy.FALL_THROUGH);
+		if (!existed && Files.exists(xmlPath)) {
+			XMLCache single = new XMLCache(xmlFileName);
+			int count = store.importFrom(single);
+			logger.info(String.format("%d cached pages split into %d files in <%s>%n", 
+					count, store.getOpenShardCount(), directory));
+		}
+		shardedCache = store;
+		return store;
+	}
+	
+	/**
+	 * Wraps file-backed cache to record its changes in a sidecar change log.
+	 */
+	private static CacheStore trackChanges(CacheStore store) {
+		changeLog = new ChangeLog(ChangeLog.changeLogFor(Paths.get(xmlFileName)));
+		return new ChangeTrackingCacheStore(store, changeLog);
+	}
+	
+	private static XMLCache openXMLCache() throws IOException {
+		if (binaryCache) 
+			openBinaryCacheFile();
+		else if (compressedCache)
+			openCompressedCacheFile();
+		XMLCache xmlCache = new XMLCache(xmlFileName, true);
+		if (noWaitForCache)
+			xmlCache.setLoadPolicy(XMLCache.LoadPolicy.FALL_THROUGH);
+		return xmlCache;
+	}
+	
+	/**
+	 * Switches xmlFileName to the compressed cache file. If there is none yet, 
+	 * creates it from the XML cache file.
+	 * @throws IOException
+	 */
+	private static void openCompressedCacheFile() throws IOException {
+		Path xmlPath = Paths.get(xmlFileName);
+		Path gzPath = xmlPath.resolveSibling(xmlPath.getFileName() + CacheFiles.COMPRESSED_EXTENSION);
+		if (!Files.exists(gzPath) && Files.exists(xmlPath)) {
+			Path tmpFile = CacheFiles.createTempFileFor(gzPath);
+			try {
+				try (OutputStream out = CacheFiles.newOutputStream(tmpFile, true)) {
+					Files.copy(xmlPath, out);
+				}
+				CacheFiles.replace(tmpFile, gzPath);
+			} finally {
+				Files.deleteIfExists(tmpFile);
+			}
+			logger.info(String.format("Cache file compressed into <%s>: %d bytes to %d%n", 
+					gzPath, Files.size(xmlPath), Files.size(gzPath)));
+		}
+		xmlFileName = gzPath.toString();
+	}
+	
+	/**
+	 * Switches xmlFileName to the binary cache file. If there is none yet, 
+	 * creates it from the XML cache file.
+	 * @throws IOException
+	 */
+	private static void openBinaryCacheFile() throws IOException {
+		Path xmlPath = Paths.get(xmlFileName);
+		String name = xmlPath.getFileName().toString();
+		if (name.endsWith(".xml"))
+			name = name.substring(0, name.length() - 4);
+		Path binPath = xmlPath.resolveSibling(name + BinaryCacheFile.FILE_EXTENSION);
+		if (!Files.exists(binPath) && 
+				(Files.exists(xmlPath) || Files.exists(CacheJournal.journalFor(xmlPath)))) {
+			// pages in the journal of the last XML run are not in the file yet
+			XMLCache source = new XMLCache(xmlFileName, true);
+			try {
+				List<Element> pages = new ArrayList<>();
+				for (String url: source.urls())
+					pages.add(source.get(url));
+				BinaryCacheFile.write(binPath, pages);
+				logger.info(String.format("%d cached pages converted into <%s>%n", pages.size(), binPath));
+			} finally {
+				source.close();
+			}
+		}
+		xmlFileName = binPath.toString();
+	}
+	
 	public static
 	void log(Level l, String s) {
 		if (logger != null)
@@ -16,7 +16,11 @@ public class SoloThreadConsoleDloader {
 	static public class STCD_JobMaster extends JobMaster {
 
 		public STCD_JobMaster(JobType whatToDo, AbstractPage rootPage) {
-			super(whatToDo, rootPage, 1);
+			this(whatToDo, rootPage, 1);
+		}
+		
+		public STCD_JobMaster(JobType whatToDo, AbstractPage rootPage, int threadsNumber) {
+			super(whatToDo, rootPage, threadsNumber);
 		}
 		
 		@Override
@@ -64,6 +68,17 @@ public class SoloThreadConsoleDloader {
 				System.out.println("failed, scheduled for DOWNLOAD"); break;
 				
 			case "download finished": break;
+			case "page type corrected":
+				System.out.println("\"" + page.toString() + "\": " + type); break;
+			case "page type mismatch":
+				System.out.print(type + ", "); break;
+			
+			// reparse jobs run in parallel, so one line per page
+			case "reparse started": break;
+			case "reparsed":
+			case "not archived, read from cache":
+			case "reparse failed":
+				System.out.println("\"" + page.toString() + "\": " + type); break;
 			default:
 				System.out.println("Unknown report:" + page + " " + type + report);
 			}
@@ -80,6 +95,14 @@ public class SoloThreadConsoleDloader {
 		//1 read cache;
 		STCD_JobMaster jm;
 		
+		if (Main.reparseArchive) {
+			System.out.println("-------Parsing archived pages------");
+			jm = new STCD_JobMaster(JobMaster.JobType.REPARSEARCHIVE, p, 
+					Runtime.getRuntime().availableProcessors());
+			jm.goGoGo();
+			return;
+		}
+		
 		System.out.println("-------Updating page data------");
 		//2 update page data
 		jm = new STCD_JobMaster(JobMaster.JobType.UPDATEPAGES, p);
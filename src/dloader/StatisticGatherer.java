@@ -1,5 +1,9 @@
 package dloader;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -16,5 +20,37 @@ public class StatisticGatherer {
 	public static AtomicInteger totalFileDownloadFinished = new AtomicInteger(0);
 	public static AtomicInteger totalPageDownloadFinished = new AtomicInteger(0);
 	public static AtomicLong totalBytesDownloaded = new AtomicLong(0);
+	/* page stages: fetching (network) and parsing, separately */
+	public static AtomicLong totalPageFetchNanos = new AtomicLong(0);
+	public static AtomicLong totalPageParseNanos = new AtomicLong(0);
+	/** pages downloaded, but not parsed as their body hash was unchanged */
+	public static AtomicInteger totalPageParseSkipped = new AtomicInteger(0);
+	/** bytes allocated by parsing pages, stays 0 if JVM can't tell */
+	public static AtomicLong totalPageParseAllocated = new AtomicLong(0);
+	/** page type (class name) to number of pages of other type created as that one */
+	public static ConcurrentMap<String, AtomicInteger> pageTypeMisguesses = new ConcurrentHashMap<>();
+	
+	public static void countPageTypeMisguess(String guessedType) {
+		AtomicInteger count = pageTypeMisguesses.get(guessedType);
+		if (count == null) {
+			pageTypeMisguesses.putIfAbsent(guessedType, new AtomicInteger());
+			count = pageTypeMisguesses.get(guessedType);
+		}
+		count.incrementAndGet();
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	
+	/**
+	 * @return bytes allocated by current thread so far, -1 if JVM can't tell
+	 */
+	public static long getThreadAllocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+			if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled())
+				return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
 
 }
@@ -1,5 +1,6 @@
 package dloader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -116,6 +117,40 @@ public class WebDownloader {
 		throw new IOException("Java fucked up and lost your file!");
 	}
 	
+	/**
+	 * Reads whole response body of a connection into memory.
+	 * @param connection - connection with OK response
+	 * @return response body
+	 * @throws IOException on stream problems
+	 */
+	public static byte[] readWebPage(URLConnection connection) throws IOException {
+		long length = connection.getContentLengthLong();
+		ByteArrayOutputStream body = new ByteArrayOutputStream(
+				(length > 0 && length < Integer.MAX_VALUE)? (int) length: 64 * 1024);
+		try (InputStream is = connection.getInputStream()) {
+			byte[] buff = new byte[64 * 1024];
+			int numRead;
+			while ((numRead = is.read(buff)) != -1)
+				body.write(buff, 0, numRead);
+		}
+		return body.toByteArray();
+	}
+	
+	/**
+	 * Check whether server answered a conditional request with "304 Not Modified".
+	 * @param connection
+	 * @return true if resource is unchanged since the validators sent
+	 */
+	public static boolean checkHttpResponseNotModified (URLConnection connection) {
+		if (connection instanceof HttpURLConnection)
+			try {
+				return ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+			} catch (IOException e) {
+				return false;
+			}
+		return false; // local files are always read
+	}
+	
 	/**
 	 * Check whether resource is accessible.
 	 * @param connection
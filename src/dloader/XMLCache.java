@@ -1,27 +1,55 @@
 package dloader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.filter.Filters;
+import org.jdom2.Text;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
-import org.jdom2.xpath.XPathBuilder;
 import org.jdom2.xpath.XPathExpression;
-import org.jdom2.xpath.XPathFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import dloader.cache.BinaryCacheFile;
+import dloader.cache.CacheFiles;
+import dloader.cache.CacheJournal;
+import dloader.cache.CacheStore;
+
 
 /**
  * Class to store data from previously downloaded pages.
@@ -29,9 +57,33 @@ import java.util.logging.Logger;
  * This class is thread-safe.
  * @author A.Cerbic
  */
-public class XMLCache {
-	//TODO: revert this to "/root/%NODENAME[@url='%s']" and fix testing cases to overload bakeAPage()
-	private static final String ELEMENT_BY_URL_XPATH = "/root/*[@url='%s']";
+public class XMLCache implements CacheStore {
+	//TODO: revert this to "/root/%NODENAME[@url=$url]" and fix testing cases to overload bakeAPage()
+	private static final String ELEMENT_BY_URL_XPATH = "/root/*[@url=$url]";
+	
+	/**
+	 * journal entry name for a page removal
+	 */
+	private static final String REMOVED_PAGE = "removed-page";
+
+	/**
+	 * autosave starts once this many pages are changed since the last save...
+	 */
+	public static final int AUTOSAVE_THRESHOLD = 500;
+	/**
+	 * ...or once this many seconds passed with any page changed
+	 */
+	public static final long AUTOSAVE_PERIOD = 60;
+
+	/**
+	 * What a lookup does with a page that may still be on its way from the cache file.
+	 */
+	public enum LoadPolicy {
+		/** wait until the loader reaches this page or the end of file */
+		BLOCK, 
+		/** report a miss right away, so the page is downloaded */
+		FALL_THROUGH
+	}
 
 	/**
 	 * handles formatting for saving as a file
@@ -40,88 +92,529 @@ public class XMLCache {
 	
 	private Path xmlFile; //effectively final
 	
-	private final Document doc;
+	/**
+	 * true if the cache file is in binary format (see BinaryCacheFile)
+	 */
+	private final boolean binary;
+	
+	/**
+	 * true if the XML cache file is gzipped (see CacheFiles.isCompressed())
+	 */
+	private final boolean compressed;
+	
+	/**
+	 * Pages saved in binary cache file, null for XML format or if there is no file yet.
+	 * In binary format index holds only pages added since the file was opened.
+	 */
+	private volatile BinaryCacheFile base;
+	
+	/**
+	 * URL to cache element index, holds all pages of XML cache.
+	 * Elements in it are never modified: a write puts a new element in place of the old one 
+	 * (copy-on-write), so readers share them with no locking and no cloning.
+	 */
+	private final ConcurrentHashMap<String, Element> index = new ConcurrentHashMap<>();
+	
+	/**
+	 * Orders writes to index with journal appends and save snapshots. Readers don't take it.
+	 */
+	private final Object writeLock = new Object();
+	
+	/**
+	 * URLs removed and not put again, so they are not served from the binary file
+	 * and not taken from the XML file by the loader.
+	 */
+	private final Set<String> removed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/**
+	 * Write-ahead log of addElementWithReplacement() and remove() calls since last saveCache(), may be null.
+	 * Removals are logged as REMOVED_PAGE elements.
+	 */
+	private CacheJournal journal; //effectively final
+	
+	/**
+	 * Runs autosave, null if not journaled
+	 */
+	private ScheduledExecutorService autosaver; //effectively final
+	
+	/**
+	 * true if autosaver belongs to this cache (and is shut down by close()), 
+	 * false if it is shared with other caches and runs their loading too
+	 */
+	private boolean ownAutosaver = true; //effectively final
+	
+	/**
+	 * periodic check for changes to save, null if not journaled
+	 */
+	private ScheduledFuture<?> autosaveCheck; //effectively final
+	
+	/**
+	 * true while an autosave is queued but not started, so a burst of changes queues one save
+	 */
+	private final AtomicBoolean autosavePending = new AtomicBoolean();
 	
 	/**
-	 * Loads file and parses it into org.jdom2.Document
-	 * If document cannot be read for any reason, new empty valid one is created 
-	 * (the file will be created when saveCache() is called next time).
+	 * Number of pages changed since last save. Guarded by writeLock.
+	 */
+	private int dirty;
+	
+	/**
+	 * Serializes saves, which run outside of writeLock.
+	 */
+	private final Object saveLock = new Object();
+	
+	/**
+	 * Released when the background loader is done with the cache file.
+	 */
+	private final CountDownLatch loaded = new CountDownLatch(1);
+	
+	/**
+	 * Lookups blocked on URLs the loader has not reached yet.
+	 */
+	private final ConcurrentHashMap<String, CountDownLatch> waiters = new ConcurrentHashMap<>();
+	
+	private volatile LoadPolicy loadPolicy = LoadPolicy.BLOCK;
+	
+	/**
+	 * Loads cache file, without journaling.
 	 * @param xmlFileName - cache file name, can't be null or empty. 
 	 * @throws IllegalArgumentException if file name null or empty.
+	 * @see #XMLCache(String, boolean)
 	 */
 	public XMLCache(String xmlFileName) {
+		this(xmlFileName, false);
+	}
+	
+	/**
+	 * Starts loading cache file and returns without waiting for it.
+	 * XML file is read by a background thread that fills the index page by page, 
+	 * lookups meanwhile follow the LoadPolicy (see setLoadPolicy()).
+	 * If document cannot be read for any reason, the pages read so far are kept 
+	 * (the file will be rewritten when saveCache() is called next time).
+	 * Files with BinaryCacheFile.FILE_EXTENSION are not parsed but mapped into memory
+	 * and their pages are decoded on demand.
+	 * If journaled, the sidecar journal left by previous run is replayed on top of the file,
+	 * every new element is appended to the journal and the cache is saved in background
+	 * (see AUTOSAVE_THRESHOLD, AUTOSAVE_PERIOD).
+	 * @param xmlFileName - cache file name, can't be null or empty. 
+	 * @param journaled - true to keep a journal of cache writes
+	 * @throws IllegalArgumentException if file name null or empty.
+	 */
+	public XMLCache(String xmlFileName, boolean journaled) {
+		this(xmlFileName, journaled, null);
+	}
+	
+	/**
+	 * Starts loading journaled cache file as XMLCache(xmlFileName, true) does, but loads it 
+	 * and saves it in background on threads of given executor, shared by many caches.
+	 * The executor is not shut down by close().
+	 * @param xmlFileName - cache file name, can't be null or empty. 
+	 * @param executor - runs background loading and autosave
+	 * @throws IllegalArgumentException if file name null or empty.
+	 */
+	public XMLCache(String xmlFileName, ScheduledExecutorService executor) {
+		this(xmlFileName, true, executor);
+	}
+	
+	private XMLCache(String xmlFileName, boolean journaled, ScheduledExecutorService executor) {
 		Logger l = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
-		Document doc = null;
 		
 		if (xmlFileName==null || xmlFileName.isEmpty())
 			throw new IllegalArgumentException();
 		try {
 			xmlFile = Paths.get(xmlFileName);
-			if (Files.exists(xmlFile)) {
-				org.jdom2.input.SAXBuilder builder = new org.jdom2.input.SAXBuilder();
-				builder.setIgnoringBoundaryWhitespace(true);
-				builder.setIgnoringElementContentWhitespace(true);
-				doc = builder.build(Files.newInputStream(xmlFile));
-			}
 		} catch (InvalidPathException e) {
 			throw new IllegalArgumentException(e);
-		} catch (IOException e) {
-			l.log(Level.WARNING, String.format("Error reading cache file <%s>%n", xmlFileName), e);
-		} catch (JDOMException e) {
-			l.log(Level.WARNING, String.format("Error parsing cache file <%s>%n", xmlFileName), e);
-		} 
+		}
+		binary = BinaryCacheFile.isBinaryCacheFile(xmlFile);
+		compressed = !binary && CacheFiles.isCompressed(xmlFile);
+		boolean loadXML = !binary && Files.exists(xmlFile);
+		if (binary && Files.exists(xmlFile))
+			try {
+				base = BinaryCacheFile.openCopy(xmlFile);
+			} catch (IOException e) {
+				l.log(Level.WARNING, String.format("Error reading cache file <%s>%n", xmlFileName), e);
+			} 
 
-		if (doc == null) doc = new Document(new Element("root"));
 		outputter = new XMLOutputter();
 		Format xmlOutputFormat = outputter.getFormat();
 		xmlOutputFormat.setIndent("  ");
 		xmlOutputFormat.setLineSeparator(System.getProperty("line.separator"));
 //		outputter.setFormat(xmlOutputFormat);
 		outputter.setFormat(Format.getPrettyFormat());
-		this.doc = doc;
+		if (compressed)
+			// indentation only adds to what the codec has to digest
+			outputter.setFormat(Format.getRawFormat());
+		
+		// journal is newer than the file: replayed first, the loader won't override it
+		if (journaled) {
+			journal = new CacheJournal(CacheJournal.journalFor(xmlFile));
+			for (Element e: journal.readEntries())
+				if (REMOVED_PAGE.equals(e.getName()))
+					removeElement(e.getAttributeValue("url"));
+				else
+					replaceElement(e);
+			startAutosave(executor);
+		}
+		if (loadXML)
+			startLoading(executor);
+		else
+			loaded.countDown();
 	}
 	
 	/**
-	 * Scans cache for the page by its URL 
+	 * Starts background thread that streams the XML file into the index.
+	 * @param executor - runs the loading instead of a thread of its own, may be null
+	 */
+	private void startLoading(ScheduledExecutorService executor) {
+		Runnable loading = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					loadDocument();
+				} finally {
+					loaded.countDown();
+					// whoever is still waiting, waits for a page that isn't there
+					for (CountDownLatch waiter: waiters.values())
+						waiter.countDown();
+					waiters.clear();
+				}
+			}
+		};
+		if (executor != null) {
+			executor.execute(loading);
+			return;
+		}
+		Thread loader = new Thread(loading, "cache loader");
+		loader.setDaemon(true); // must not keep application running
+		loader.start();
+	}
+	
+	/**
+	 * Reads XML file with a pull parser and adds pages one by one as they are read,
+	 * releasing lookups waiting for them.
+	 * Only the first element for a URL is kept, so elements already put into cache 
+	 * (from journal or by page jobs) and later duplicates in the file are skipped.
+	 */
+	private void loadDocument() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		int count = 0;
+		try (InputStream in = CacheFiles.newInputStream(xmlFile)) {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				reader.nextTag(); // root
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					Element e = readElement(reader);
+					String url = e.getAttributeValue("url");
+					// no locking: remove() waits for the loader and put() replaces atomically
+					if (url != null && !removed.contains(url))
+						index.putIfAbsent(url, e);
+					if (url != null) {
+						CountDownLatch waiter = waiters.remove(url);
+						if (waiter != null) waiter.countDown();
+					}
+					count++;
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			Main.log(Level.WARNING, String.format("Error reading cache file <%s>%n", xmlFile), e);
+		} catch (XMLStreamException e) {
+			Main.log(Level.WARNING, String.format("Error parsing cache file <%s> after %d pages%n", xmlFile, count), e);
+			// next save keeps only pages read so far, so the damaged file is set aside for salvage
+			Path copy = xmlFile.resolveSibling(xmlFile.getFileName() + ".damaged");
+			try {
+				Files.copy(xmlFile, copy, StandardCopyOption.REPLACE_EXISTING);
+				Main.log(Level.WARNING, String.format("Damaged cache file is copied to <%s>%n", copy));
+			} catch (IOException e1) {
+				Main.log(Level.WARNING, String.format("Error copying damaged cache file to <%s>%n", copy), e1);
+			}
+		}
+	}
+	
+	/**
+	 * Builds element the reader is positioned at, leaving the reader at its end tag.
+	 * Whitespace-only text is dropped, as ignoring boundary whitespace does.
+	 */
+	private static
+	Element readElement(XMLStreamReader reader) throws XMLStreamException {
+		Element e = new Element(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			e.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		while (true) 
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				e.addContent(readElement(reader));
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				if (!reader.isWhiteSpace())
+					e.addContent(new Text(reader.getText()));
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return e;
+			}
+	}
+	
+	/**
+	 * @param policy - how lookups treat pages not loaded yet, BLOCK by default
+	 */
+	public void setLoadPolicy(LoadPolicy policy) {
+		loadPolicy = policy;
+	}
+	
+	/**
+	 * @return true when the whole cache file has been read
+	 */
+	public boolean isLoaded() {
+		return loaded.getCount() == 0;
+	}
+	
+	/**
+	 * Waits for background loading of the cache file to finish.
+	 * @throws InterruptedException
+	 */
+	public void awaitLoaded() throws InterruptedException {
+		loaded.await();
+	}
+	
+	/**
+	 * Waits until the loader reaches given URL or finishes. Other URLs are not waited for.
+	 * @return cached element (not a clone) or null
+	 */
+	private Element awaitElement(String url) {
+		CountDownLatch waiter = new CountDownLatch(1);
+		CountDownLatch existing = waiters.putIfAbsent(url, waiter);
+		if (existing != null) waiter = existing;
+		// the loader might have passed this URL or the end before the waiter was registered
+		Element result = index.get(url);
+		if (result == null && !isLoaded())
+			try {
+				waiter.await();
+				result = index.get(url);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // job is being cancelled, treat as a miss
+			}
+		return result;
+	}
+	
+	/**
+	 * Starts background thread to save changed cache, so the journal stays short.
+	 * @param executor - runs the saves instead of a thread of its own, may be null
+	 */
+	private void startAutosave(ScheduledExecutorService executor) {
+		if (executor != null) {
+			autosaver = executor;
+			ownAutosaver = false;
+		} else
+			autosaver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "cache autosave");
+					t.setDaemon(true); // must not keep application running
+					return t;
+				}
+			});
+		autosaveCheck = autosaver.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				boolean changed;
+				synchronized (writeLock) {
+					changed = dirty > 0;
+				}
+				if (changed) requestAutosave();
+			}
+		}, AUTOSAVE_PERIOD, AUTOSAVE_PERIOD, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Queues a save on the autosave thread unless one is queued already.
+	 * A cache still loading is not saved: on a shared executor the save would hold a thread 
+	 * the loading may be queued for. It is saved by a later check.
+	 */
+	private void requestAutosave() {
+		if (autosaver == null || !autosavePending.compareAndSet(false, true)) return;
+		try {
+			autosaver.execute(new Runnable() {
+				@Override
+				public void run() {
+					autosavePending.set(false);
+					if (!isLoaded() || autosaveCheck.isCancelled()) return; // loading, or closed
+					try {
+						saveCache();
+					} catch (IOException e) {
+						Main.log(Level.WARNING, "Cache autosave failed", e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// closed
+		}
+	}
+	
+	/**
+	 * Looks up the page by its URL in the index.
+	 * No locking and no copying: indexed elements are never modified.
+	 * While the file is still loading, a page not found either waits for the loader
+	 * or is reported missing, as set by setLoadPolicy().
 	 * @param pageURL - URL of a page cached
-	 * @return a CLONE of a cache element (save for modification)
+	 * @return cache element, shared and NOT to be modified 
 	 */
-	synchronized public
+	public
 	Element getElementForPage(String pageURL) {
-		String searchXPath = String.format(ELEMENT_BY_URL_XPATH, pageURL);
-		List<Element> result = queryXPathList(searchXPath);
-		return result.size()>0?(Element)result.get(0).clone():null; 
+		Element result = index.get(pageURL);
+		if (result == null && removed.contains(pageURL)) return null;
+		if (result == null && loadPolicy == LoadPolicy.BLOCK && !isLoaded())
+			result = awaitElement(pageURL);
+		if (result != null) return result;
+		BinaryCacheFile b = base;
+		return b == null? null: b.get(pageURL);
+	}
+	
+	@Override
+	public
+	Element get(String url) {
+		return getElementForPage(url);
 	}
 	
 	/**
-	 * Adds new element to a cache and drops previous versions of this element, if any existed
+	 * Builds a document of all pages in memory and scans it for the page by its URL, bypassing the index.
+	 * Kept as a reference implementation for tests, waits for the whole file to load.
+	 * @param pageURL - URL of a page cached
+	 * @return a CLONE of a cache element (save for modification)
+	 * @throws InterruptedException 
+	 */
+	public
+	Element getElementForPageByXPath(String pageURL) throws InterruptedException {
+		awaitLoaded();
+		Element root = new Element("root");
+		for (Element e: index.values())
+			root.addContent(e.clone());
+		new Document(root);
+		List<Element> result = queryXPathList(ELEMENT_BY_URL_XPATH, "url", pageURL, root);
+		if (result.size()>0) return result.get(0).detach();
+		return base == null || removed.contains(pageURL)? null: base.get(pageURL);
+	}
+	
+	/**
+	 * Adds new element to a cache and drops previous versions of this element, if any existed.
+	 * Elements with no "url" attribute can't be looked up and are ignored.
 	 * @param e - the new element to add
 	 */
-	synchronized public
+	public
 	void addElementWithReplacement (Element e) {
-		Element root = doc.getRootElement();
-		
-		Collection<Element> oldCachedElements = queryXPathList(
-				String.format(ELEMENT_BY_URL_XPATH,e.getAttributeValue("url")));
-		for (Element current: oldCachedElements) 
-			current.detach();
-
-		root.addContent((Element)e.clone());
+		if (e.getAttributeValue("url") == null) return;
+		Element copy = e.clone();
+		boolean saveDue;
+		synchronized (writeLock) {
+			replaceElement(copy);
+			if (journal != null)
+				try {
+					journal.append(copy);
+				} catch (IOException e1) {
+					Main.log(Level.WARNING, "Error writing cache journal", e1);
+				}
+			saveDue = ++dirty >= AUTOSAVE_THRESHOLD;
+		}
+		if (saveDue) requestAutosave();
+	}
+	
+	@Override
+	public
+	void put(Element e) {
+		addElementWithReplacement(e);
+	}
+	
+	/**
+	 * Drops the page from cache. Waits for the file to be loaded first.
+	 * @param url - URL of a page cached
+	 */
+	@Override
+	public
+	void remove(String url) {
+		awaitLoadedUninterruptibly();
+		boolean saveDue;
+		synchronized (writeLock) {
+			removeElement(url);
+			if (journal != null)
+				try {
+					Element tombstone = new Element(REMOVED_PAGE);
+					tombstone.setAttribute("url", url);
+					journal.append(tombstone);
+				} catch (IOException e1) {
+					Main.log(Level.WARNING, "Error writing cache journal", e1);
+				}
+			saveDue = ++dirty >= AUTOSAVE_THRESHOLD;
+		}
+		if (saveDue) requestAutosave();
+	}
+	
+	/**
+	 * Lists all pages, in memory and in the binary file. Waits for the file to be loaded first.
+	 */
+	@Override
+	public
+	Collection<String> urls() {
+		awaitLoadedUninterruptibly();
+		Set<String> result = new HashSet<>(index.keySet());
+		BinaryCacheFile b = base;
+		if (b != null) 
+			for (String url: b.urls())
+				if (!removed.contains(url)) result.add(url);
+		return result;
+	}
+	
+	private void awaitLoadedUninterruptibly() {
+		boolean interrupted = false;
+		while (!isLoaded())
+			try {
+				awaitLoaded();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
+	/**
+	 * Puts the element into index in place of the previous version.
+	 * Must be called under writeLock.
+	 * @param e - the element to add, must not be modified afterwards
+	 */
+	private
+	void replaceElement (Element e) {
+		String url = e.getAttributeValue("url");
+		if (url == null) return;
+		index.put(url, e);
+		removed.remove(url);
+	}
+	
+	/**
+	 * Drops the element from index and hides it in the binary file. 
+	 * Must be called under writeLock.
+	 */
+	private
+	void removeElement (String url) {
+		if (url == null) return;
+		removed.add(url);
+		index.remove(url);
 	}
 	
 	/**
 	 * Queries given JDOM (XML) document with XPath string
-	 * @param query - XPath string 
-	 * @param doc - JDOM Document or Element
+	 * @param query - XPath string with a variable
+	 * @param variable - name of the variable
+	 * @param value - value of the variable
+	 * @param root - root element of JDOM Document
 	 * @return List of found matches, may be of zero size if nothing is found
 	 */
-	private
-	List<Element> queryXPathList(String query) {
+	private static
+	List<Element> queryXPathList(String query, String variable, String value, Element root) {
 		if (query == null) return new ArrayList<Element>(0);
 		try {
-			Element root = doc.getRootElement();
-			XPathBuilder<Element> xpb = new XPathBuilder<Element>(query,Filters.element()); 
-			XPathExpression<Element> xpe = xpb.compileWith(XPathFactory.instance()); // default factory
+			XPathExpression<Element> xpe = XPathCache.get(query, null, variable);
+			xpe.setVariable(variable, value);
 			return xpe.evaluate(root);
 		} catch (NullPointerException|IllegalStateException|IllegalArgumentException  e) {
 			Main.logger.log(Level.SEVERE,"",e);
@@ -130,15 +623,145 @@ public class XMLCache {
 	}	
 
 	/**
-	 * Saves XML cache back into a file
+	 * Saves XML cache back into a file. The file is written aside and moved over the old one,
+	 * so a crash never leaves a partly written cache file.
+	 * Pages are only collected under the lock, writing does not block cache users 
+	 * (and readers don't take the lock at all).
+	 * Journal entries are discarded once the pages they hold are saved. 
+	 * Waits for the file to be loaded first.
 	 * @throws IOException - if problems occur.
 	 */
 	public void saveCache() throws IOException {
-		if (xmlFile != null)
-		synchronized (doc) {
-			try (OutputStream outStream = Files.newOutputStream(xmlFile)) { 
-				outputter.output(doc, outStream);
+		try {
+			awaitLoaded(); // a partly loaded document would overwrite the file with a part of it
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("interrupted while loading cache file");
+		}
+		synchronized (saveLock) {
+			List<Element> pages;
+			int savedDirty;
+			synchronized (writeLock) {
+				// cached elements are never modified, so the list is a stable snapshot
+				pages = new ArrayList<>(index.values());
+				savedDirty = dirty;
+				dirty = 0;
+				if (journal != null)
+					journal.rotate();
+			}
+			try {
+				if (binary)
+					saveBinaryCache(pages);
+				else
+					saveXMLCache(pages);
+			} catch (IOException e) {
+				synchronized (writeLock) {
+					dirty += savedDirty;
+				}
+				throw e;
 			}
+			if (journal != null)
+				journal.discardRotated();
 		}
 	}
+	
+	/**
+	 * Writes pages as XML document into a temporary file and replaces the cache file with it.
+	 * Pages are written sorted by URL, so pages of an artist and their repeating 
+	 * URL prefixes come close together, within reach of the compression window.
+	 * Root pages (those no other page refers to as a child) are written first, 
+	 * so the background load reads them first and a run gets its starting page at once.
+	 * @param pages - page elements
+	 * @throws IOException
+	 */
+	private void saveXMLCache(List<Element> pages) throws IOException {
+		final Set<String> children = new HashSet<>();
+		for (Element e: pages)
+			for (Element child: e.getChildren("childref"))
+				children.add(child.getAttributeValue("url"));
+		Collections.sort(pages, new Comparator<Element>() {
+			@Override
+			public int compare(Element e1, Element e2) {
+				String url1 = e1.getAttributeValue("url"), url2 = e2.getAttributeValue("url");
+				boolean root1 = !children.contains(url1), root2 = !children.contains(url2);
+				if (root1 != root2) return root1? -1: 1;
+				return url1.compareTo(url2);
+			}
+		});
+		Path tmpFile = CacheFiles.createTempFileFor(xmlFile);
+		String lineSeparator = outputter.getFormat().getLineSeparator();
+		try {
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(
+					CacheFiles.newOutputStream(tmpFile, compressed), Charset.forName("UTF-8")))) {
+				out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + lineSeparator);
+				out.write("<root>" + lineSeparator);
+				for (Element e: pages) {
+					outputter.output(e, out);
+					out.write(lineSeparator);
+				}
+				out.write("</root>" + lineSeparator);
+			}
+			CacheFiles.replace(tmpFile, xmlFile);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		saveCache();
+	}
+	
+	/**
+	 * Merges pages added since the binary file was opened with the file contents 
+	 * and writes a new file. Saved pages are then served from the new file and dropped from memory,
+	 * pages added during the save stay.
+	 * The file in use is a mapped copy (see BinaryCacheFile.openCopy()), so the file itself 
+	 * can be replaced, Windows included.
+	 * @param added - pages added since the binary file was opened
+	 * @throws IOException
+	 */
+	private void saveBinaryCache(List<Element> added) throws IOException {
+		List<Element> pages = new ArrayList<>();
+		Map<String, Integer> positions = new HashMap<>();
+		if (base != null)
+			for (Element e: base.getAll()) {
+				String url = e.getAttributeValue("url");
+				if (url == null || !removed.contains(url))
+					addOrReplace(e, pages, positions);
+			}
+		for (Element e: added)
+			addOrReplace(e, pages, positions);
+		
+		BinaryCacheFile.write(xmlFile, pages);
+		BinaryCacheFile saved = BinaryCacheFile.openCopy(xmlFile);
+		synchronized (writeLock) {
+			base = saved;
+			for (Element e: added)
+				index.remove(e.getAttributeValue("url"), e);
+		}
+	}
+	
+	private static
+	void addOrReplace(Element e, List<Element> pages, Map<String, Integer> positions) {
+		String url = e.getAttributeValue("url");
+		Integer position = (url == null)? null: positions.get(url);
+		if (position == null) {
+			if (url != null) positions.put(url, pages.size());
+			pages.add(e);
+		} else 
+			pages.set(position, e);
+	}
+	
+	/**
+	 * Stops autosave and releases journal file. Does not save the cache.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		if (autosaveCheck != null)
+			autosaveCheck.cancel(false);
+		if (autosaver != null && ownAutosaver)
+			autosaver.shutdownNow();
+		if (journal != null)
+			journal.close();
+	}
 }
@@ -0,0 +1,71 @@
+package dloader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.filter.Filters;
+import org.jdom2.xpath.XPathBuilder;
+import org.jdom2.xpath.XPathExpression;
+import org.jdom2.xpath.XPathFactory;
+
+/**
+ * Compiled XPath expressions for element queries, so a query is compiled
+ * once per thread and not for every page it is run on.
+ * Compiled expressions are not thread-safe (variables are set on them),
+ * so each thread keeps its own ones.
+ * Each thread keeps at most MAX_EXPRESSIONS of them, least recently used are dropped.
+ */
+public class XPathCache {
+
+	public static final int MAX_EXPRESSIONS = 64;
+
+	private static final ThreadLocal<Map<String, XPathExpression<Element>>> expressions =
+			new ThreadLocal<Map<String, XPathExpression<Element>>>() {
+		@Override
+		protected Map<String, XPathExpression<Element>> initialValue() {
+			return new LinkedHashMap<String, XPathExpression<Element>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, XPathExpression<Element>> eldest) {
+					return size() > MAX_EXPRESSIONS;
+				}
+			};
+		}
+	};
+
+	private XPathCache() {}
+
+	/**
+	 * Gets compiled expression for the query, compiling it on first use in this thread.
+	 * The expression must not be handed to other threads.
+	 * @param query - XPath string
+	 * @param namespace - namespace bound to its prefix in the query, null for none
+	 * @param variables - names of variables used in the query, to be set before evaluation
+	 * @return compiled expression selecting elements
+	 * @throws NullPointerException, IllegalArgumentException if the query can't be compiled
+	 */
+	public static
+	XPathExpression<Element> get(String query, Namespace namespace, String... variables) {
+		StringBuilder key = new StringBuilder(query);
+		if (namespace != null)
+			key.append('\n').append(namespace.getPrefix()).append('=').append(namespace.getURI());
+		for (String variable: variables)
+			key.append("\n$").append(variable);
+
+		Map<String, XPathExpression<Element>> compiled = expressions.get();
+		XPathExpression<Element> xpe = compiled.get(key.toString());
+		if (xpe == null) {
+			XPathBuilder<Element> xpb = new XPathBuilder<Element>(query, Filters.element());
+			if (namespace != null)
+				xpb.setNamespace(namespace);
+			for (String variable: variables)
+				xpb.setVariable(variable, null);
+			xpe = xpb.compileWith(XPathFactory.instance()); // default factory
+			compiled.put(key.toString(), xpe);
+		}
+		return xpe;
+	}
+}
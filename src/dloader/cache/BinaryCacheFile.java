@@ -0,0 +1,418 @@
+package dloader.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+/**
+ * Read-only compact binary image of cache elements, accessed through a memory-mapped buffer.
+ * Only the elements asked for are decoded, the rest of the file stays on disk.<br/><br/>
+ *
+ * File layout (all numbers are big-endian ints):
+ * <pre>
+ * header:   MAGIC, VERSION, stringCount, nodeCount, attrCount, pageCount, slotCount,
+ *           stringOffsetsPos, stringDataPos, nodesPos, attrsPos, slotsPos
+ * strings:  stringCount+1 offsets into string data, then UTF-8 string data
+ * nodes:    fixed-width element records {nameId, textId, firstAttr, attrCount, firstChild, childCount},
+ *           top level page elements come first, children of each node are stored contiguously
+ * attrs:    fixed-width attribute records {nameId, valueId}
+ * slots:    open addressing hash index {urlId, nodeIndex} of page elements by "url" attribute
+ * </pre>
+ * Element text is kept only if it is not whitespace. Namespaces are not kept.
+ * A file that is going to be replaced while in use (the cache file of a run) is opened 
+ * with openCopy(): a mapped file can't be replaced on Windows.
+ *
+ * This class is thread-safe.
+ */
+public class BinaryCacheFile {
+
+	public static final String FILE_EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x42434346; // "BCCF"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12 * 4;
+	private static final int NODE_SIZE = 6 * 4;
+	private static final int ATTR_SIZE = 2 * 4;
+	private static final int SLOT_SIZE = 2 * 4;
+	private static final int NONE = -1;
+
+	/**
+	 * suffix of private copies mapped by openCopy()
+	 */
+	private static final String MAPPED_COPY_SUFFIX = ".mapped";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Only absolute get methods are used, so the buffer can be shared between threads.
+	 */
+	private final MappedByteBuffer buffer;
+
+	private final int pageCount, slotCount;
+	private final int stringOffsetsPos, stringDataPos, nodesPos, attrsPos, slotsPos;
+
+	private BinaryCacheFile(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a binary cache file");
+		if (buffer.getInt(4) != VERSION)
+			throw new IOException("Unsupported binary cache file version " + buffer.getInt(4));
+		int stringCount = buffer.getInt(8), nodeCount = buffer.getInt(12), attrCount = buffer.getInt(16);
+		pageCount = buffer.getInt(20);
+		slotCount = buffer.getInt(24);
+		stringOffsetsPos = buffer.getInt(28);
+		stringDataPos = buffer.getInt(32);
+		nodesPos = buffer.getInt(36);
+		attrsPos = buffer.getInt(40);
+		slotsPos = buffer.getInt(44);
+
+		// sections must follow each other within the file, so lookups never read past it
+		if (stringCount < 0 || nodeCount < 0 || attrCount < 0 || pageCount < 0 || pageCount > nodeCount
+				|| slotCount < 0 || (slotCount & (slotCount - 1)) != 0
+				|| stringOffsetsPos < HEADER_SIZE
+				|| stringOffsetsPos + (stringCount + 1L) * 4 > stringDataPos
+				|| stringDataPos > nodesPos
+				|| nodesPos + (long) nodeCount * NODE_SIZE > attrsPos
+				|| attrsPos + (long) attrCount * ATTR_SIZE > slotsPos
+				|| slotsPos + (long) slotCount * SLOT_SIZE > buffer.capacity()
+				|| buffer.getInt(stringOffsetsPos + stringCount * 4) > nodesPos - stringDataPos)
+			throw new IOException("Binary cache file is damaged or truncated");
+	}
+
+	/**
+	 * Maps the file into memory.
+	 * @param file - binary cache file
+	 * @return opened file
+	 * @throws IOException if file can't be read or is not a binary cache file
+	 */
+	public static
+	BinaryCacheFile open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// mapping stays valid after the channel is closed
+			return new BinaryCacheFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Maps a private copy of the file, so the file can be replaced while the copy is in use.
+	 * The copy is deleted at once where a mapped file can be deleted, otherwise (on Windows)
+	 * it is left until a later openCopy() of the same file finds it no longer mapped.
+	 * @param file - binary cache file
+	 * @return opened copy
+	 * @throws IOException if file can't be read or is not a binary cache file
+	 */
+	public static
+	BinaryCacheFile openCopy(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		String prefix = file.getFileName() + ".";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path stale: files) {
+				String name = stale.getFileName().toString();
+				if (name.startsWith(prefix) && name.endsWith(MAPPED_COPY_SUFFIX))
+					deleteCopy(stale);
+			}
+		}
+		Path copy = Files.createTempFile(directory, prefix, MAPPED_COPY_SUFFIX);
+		try {
+			Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+			return open(copy);
+		} finally {
+			deleteCopy(copy);
+		}
+	}
+
+	private static
+	void deleteCopy(Path copy) {
+		try {
+			Files.deleteIfExists(copy);
+		} catch (IOException e) {
+			// still mapped
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file name denotes binary cache format
+	 */
+	public static
+	boolean isBinaryCacheFile(Path file) {
+		return file.getFileName().toString().endsWith(FILE_EXTENSION);
+	}
+
+	/**
+	 * @return number of page elements in the file
+	 */
+	public
+	int size() {
+		return pageCount;
+	}
+
+	/**
+	 * Looks up page element by its "url" attribute.
+	 * @param url
+	 * @return new decoded element, or null if not found
+	 */
+	public
+	Element get(String url) {
+		if (url == null || slotCount == 0) return null;
+		byte[] key = url.getBytes(UTF8);
+		for (int slot = hashSlot(url, slotCount), probes = 0; probes < slotCount;
+				slot = (slot + 1) & (slotCount - 1), probes++) {
+			int urlId = buffer.getInt(slotsPos + slot * SLOT_SIZE);
+			if (urlId == NONE) return null;
+			if (stringEquals(urlId, key))
+				return decodeNode(buffer.getInt(slotsPos + slot * SLOT_SIZE + 4));
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes all page elements in the file, in stored order.
+	 * @return list of new elements
+	 */
+	public
+	List<Element> getAll() {
+		List<Element> result = new ArrayList<>(pageCount);
+		for (int i = 0; i < pageCount; i++)
+			result.add(decodeNode(i));
+		return result;
+	}
+
+	/**
+	 * Reads URLs of indexed pages without decoding the pages.
+	 * @return list of URLs, in no particular order
+	 */
+	public
+	List<String> urls() {
+		List<String> result = new ArrayList<>(pageCount);
+		for (int slot = 0; slot < slotCount; slot++) {
+			int urlId = buffer.getInt(slotsPos + slot * SLOT_SIZE);
+			if (urlId != NONE) result.add(getString(urlId));
+		}
+		return result;
+	}
+
+	private static
+	int hashSlot(String url, int slotCount) {
+		int h = url.hashCode();
+		h ^= (h >>> 16);
+		return h & (slotCount - 1);
+	}
+
+	private
+	boolean stringEquals(int id, byte[] key) {
+		int start = buffer.getInt(stringOffsetsPos + id * 4);
+		int end = buffer.getInt(stringOffsetsPos + (id + 1) * 4);
+		if (end - start != key.length) return false;
+		for (int i = 0; i < key.length; i++)
+			if (buffer.get(stringDataPos + start + i) != key[i]) return false;
+		return true;
+	}
+
+	private
+	String getString(int id) {
+		if (id == NONE) return null;
+		int start = buffer.getInt(stringOffsetsPos + id * 4);
+		int end = buffer.getInt(stringOffsetsPos + (id + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(stringDataPos + start + i);
+		return new String(bytes, UTF8);
+	}
+
+	private
+	Element decodeNode(int node) {
+		int pos = nodesPos + node * NODE_SIZE;
+		Element e = new Element(getString(buffer.getInt(pos)));
+		String text = getString(buffer.getInt(pos + 4));
+		if (text != null) e.setText(text);
+		int firstAttr = buffer.getInt(pos + 8), attrCount = buffer.getInt(pos + 12);
+		for (int i = firstAttr; i < firstAttr + attrCount; i++) {
+			int attrPos = attrsPos + i * ATTR_SIZE;
+			e.setAttribute(getString(buffer.getInt(attrPos)), getString(buffer.getInt(attrPos + 4)));
+		}
+		int firstChild = buffer.getInt(pos + 16), childCount = buffer.getInt(pos + 20);
+		for (int i = firstChild; i < firstChild + childCount; i++)
+			e.addContent(decodeNode(i));
+		return e;
+	}
+
+	/**
+	 * Writes elements into a new binary cache file. The file is written aside and then moved into place.
+	 * @param file - destination
+	 * @param pages - page elements, identified by "url" attribute
+	 * 		(elements without one are saved, but can't be looked up)
+	 * @throws IOException
+	 */
+	public static
+	void write(Path file, Collection<Element> pages) throws IOException {
+		Map<String, Integer> stringIds = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+
+		// breadth first numbering: pages first, then children of every node in a row
+		List<Element> nodes = new ArrayList<>(pages);
+		List<int[]> childRanges = new ArrayList<>();
+		for (int node = 0; node < nodes.size(); node++) {
+			List<Element> children = nodes.get(node).getChildren();
+			childRanges.add(new int[] {nodes.size(), children.size()});
+			nodes.addAll(children);
+		}
+
+		int attrCount = 0;
+		for (Element e: nodes) attrCount += e.getAttributes().size();
+
+		int slotCount = 1;
+		while (slotCount < pages.size() * 2) slotCount <<= 1;
+		int[] slots = new int[slotCount * 2];
+		Arrays.fill(slots, NONE);
+
+		// string ids must be known before nodes are written, so intern everything first
+		int[] nodeData = new int[nodes.size() * 6];
+		int[] attrData = new int[attrCount * 2];
+		int attrIndex = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			Element e = nodes.get(i);
+			String text = e.getTextTrim();
+			nodeData[i * 6] = intern(e.getName(), stringIds, strings);
+			nodeData[i * 6 + 1] = text.isEmpty()? NONE: intern(e.getText(), stringIds, strings);
+			nodeData[i * 6 + 2] = attrIndex;
+			nodeData[i * 6 + 3] = e.getAttributes().size();
+			nodeData[i * 6 + 4] = childRanges.get(i)[0];
+			nodeData[i * 6 + 5] = childRanges.get(i)[1];
+			for (Attribute a: e.getAttributes()) {
+				attrData[attrIndex * 2] = intern(a.getName(), stringIds, strings);
+				attrData[attrIndex * 2 + 1] = intern(a.getValue(), stringIds, strings);
+				attrIndex++;
+			}
+			String url = e.getAttributeValue("url");
+			if (i < pages.size() && url != null) {
+				int slot = hashSlot(url, slotCount);
+				while (slots[slot * 2] != NONE) {
+					if (strings.get(slots[slot * 2]).equals(url)) break; // first one wins
+					slot = (slot + 1) & (slotCount - 1);
+				}
+				if (slots[slot * 2] == NONE) {
+					slots[slot * 2] = intern(url, stringIds, strings);
+					slots[slot * 2 + 1] = i;
+				}
+			}
+		}
+
+		List<byte[]> encoded = new ArrayList<>(strings.size());
+		int stringDataSize = 0;
+		for (String s: strings) {
+			byte[] b = s.getBytes(UTF8);
+			encoded.add(b);
+			stringDataSize += b.length;
+		}
+
+		int stringOffsetsPos = HEADER_SIZE;
+		int stringDataPos = stringOffsetsPos + (strings.size() + 1) * 4;
+		int nodesPos = stringDataPos + stringDataSize;
+		int attrsPos = nodesPos + nodes.size() * NODE_SIZE;
+		int slotsPos = attrsPos + attrCount * ATTR_SIZE;
+
+		Path tmpFile = CacheFiles.createTempFileFor(file);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				for (int i: new int[] {MAGIC, VERSION, strings.size(), nodes.size(), attrCount, pages.size(), slotCount,
+						stringOffsetsPos, stringDataPos, nodesPos, attrsPos, slotsPos})
+					out.writeInt(i);
+				int offset = 0;
+				for (byte[] b: encoded) {
+					out.writeInt(offset);
+					offset += b.length;
+				}
+				out.writeInt(offset);
+				for (byte[] b: encoded) out.write(b);
+				for (int i: nodeData) out.writeInt(i);
+				for (int i: attrData) out.writeInt(i);
+				for (int i: slots) out.writeInt(i);
+			}
+			CacheFiles.replace(tmpFile, file);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	private static
+	int intern(String s, Map<String, Integer> stringIds, List<String> strings) {
+		Integer id = stringIds.get(s);
+		if (id == null) {
+			id = strings.size();
+			strings.add(s);
+			stringIds.put(s, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Converts XML cache file (plain or compressed) into binary one.
+	 * @param xmlFile - source file
+	 * @param binFile - destination file
+	 * @return number of page elements converted
+	 * @throws IOException
+	 */
+	public static
+	int convertFromXML(Path xmlFile, Path binFile) throws IOException {
+		SAXBuilder builder = new SAXBuilder();
+		builder.setIgnoringBoundaryWhitespace(true);
+		builder.setIgnoringElementContentWhitespace(true);
+		try (InputStream in = CacheFiles.newInputStream(xmlFile)) {
+			List<Element> pages = builder.build(in).getRootElement().getChildren();
+			write(binFile, pages);
+			return pages.size();
+		} catch (JDOMException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Converts binary cache file into XML one. The XML file is written aside and moved over
+	 * the destination, as any cache file save.
+	 * @param binFile - source file
+	 * @param xmlFile - destination file
+	 * @return number of page elements converted
+	 * @throws IOException
+	 */
+	public static
+	int convertToXML(Path binFile, Path xmlFile) throws IOException {
+		List<Element> pages = open(binFile).getAll();
+		Element root = new Element("root");
+		root.addContent(pages);
+		Path tmpFile = CacheFiles.createTempFileFor(xmlFile);
+		try {
+			try (OutputStream out = CacheFiles.newOutputStream(tmpFile, CacheFiles.isCompressed(xmlFile))) {
+				new XMLOutputter(Format.getPrettyFormat()).output(new Document(root), out);
+			}
+			CacheFiles.replace(tmpFile, xmlFile);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+		return pages.size();
+	}
+}
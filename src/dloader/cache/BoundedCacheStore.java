@@ -0,0 +1,200 @@
+package dloader.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdom2.Element;
+
+/**
+ * In-memory cache store holding a limited number of pages.
+ * When full, least recently used page is dropped to make room for a new one.
+ * 
+ * Can be put in front of another (on-disk) store as a tier of most used pages: 
+ * misses are read from the backing store and writes go through to it, 
+ * so nothing is lost on eviction.
+ *
+ * This class is thread-safe.
+ */
+public class BoundedCacheStore implements CacheStore {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * number of locks writes of pages are spread over
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * locks of writes by URL hash, so writes of a page reach memory and backing store 
+	 * in the same order, while writes of other pages go on
+	 */
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private final int capacity;
+
+	/**
+	 * store behind this one, may be null
+	 */
+	private final CacheStore backing;
+
+	/**
+	 * URL to page element map in access order (guarded by this)
+	 */
+	private final LinkedHashMap<String, Element> pages;
+
+	/**
+	 * incremented before and after every write (guarded by this), so a miss read from 
+	 * the backing store is not kept if a write could have made it stale
+	 */
+	private long writes;
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+	/**
+	 * @param capacity - maximum number of pages kept
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public BoundedCacheStore(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * @param capacity - maximum number of pages kept in memory
+	 * @param backing - store to read misses from and write through to, may be null
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public BoundedCacheStore(int capacity, CacheStore backing) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException();
+		this.capacity = capacity;
+		this.backing = backing;
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+		pages = new LinkedHashMap<String, Element>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Element> eldest) {
+				if (size() <= BoundedCacheStore.this.capacity) return false;
+				evictions.incrementAndGet();
+				return true;
+			}
+		};
+	}
+
+	Object lockFor(String url) {
+		return locks[(url.hashCode() & Integer.MAX_VALUE) % locks.length];
+	}
+
+	@Override
+	public
+	Element get(String url) {
+		long writesBefore;
+		synchronized (this) {
+			Element e = pages.get(url);
+			if (e != null) {
+				hits.incrementAndGet();
+				return e;
+			}
+			writesBefore = writes;
+		}
+		misses.incrementAndGet();
+		if (backing == null) return null;
+		Element e = backing.get(url); // not under lock, it may take a while
+		if (e != null)
+			synchronized (this) {
+				// don't override a put, nor bring back a page removed, meanwhile
+				if (writes == writesBefore && !pages.containsKey(url)) 
+					pages.put(url, e);
+			}
+		return e;
+	}
+
+	@Override
+	public
+	void put(Element e) {
+		String url = e.getAttributeValue("url");
+		if (url == null) return;
+		Element copy = e.clone();
+		synchronized (lockFor(url)) {
+			synchronized (this) {
+				writes++;
+				pages.put(url, copy);
+			}
+			if (backing != null)
+				backing.put(copy);
+			synchronized (this) {
+				writes++;
+			}
+		}
+	}
+
+	@Override
+	public
+	void remove(String url) {
+		synchronized (lockFor(url)) {
+			synchronized (this) {
+				writes++;
+				pages.remove(url);
+			}
+			if (backing != null)
+				backing.remove(url);
+			synchronized (this) {
+				writes++;
+			}
+		}
+	}
+
+	@Override
+	public
+	Collection<String> urls() {
+		if (backing != null) 
+			return backing.urls();
+		synchronized (this) {
+			return new ArrayList<>(pages.keySet());
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (backing != null)
+			backing.flush();
+	}
+
+	/**
+	 * @return number of pages stored in memory
+	 */
+	public synchronized
+	int size() {
+		return pages.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of lookups served from memory
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups not found in memory (and passed to backing store, if any)
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of pages dropped from memory to make room for others
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+}
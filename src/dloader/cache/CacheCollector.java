@@ -0,0 +1,100 @@
+package dloader.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jdom2.Element;
+
+import dloader.page.AbstractPage;
+
+/**
+ * Finds cached pages that can't be reached from given root pages by following 
+ * &lt;childref&gt; links, such as albums removed from a discography or pages of roots no longer crawled.
+ * Root URLs are taken as typed by a user: those not cached as they are are looked up 
+ * in the form pages are cached under (see AbstractPage.fixURLString()).
+ * Unreachable pages are only reported when at least one root is cached, 
+ * otherwise every page would be.
+ */
+public class CacheCollector {
+
+	private final CacheStore store;
+
+	public CacheCollector(CacheStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Walks childref links from the roots. Links to pages that are not cached are not followed.
+	 * @param roots - URLs of root pages
+	 * @return URLs of cached pages reachable from roots (roots included)
+	 */
+	public
+	Set<String> findReachable(Collection<String> roots) {
+		Set<String> reachable = new HashSet<>();
+		Deque<String> queue = new ArrayDeque<>(cacheKeysOf(roots));
+		while (!queue.isEmpty()) {
+			String url = queue.poll();
+			if (!reachable.add(url)) continue;
+			Element e = store.get(url);
+			if (e == null) continue;
+			for (Element childRef: e.getChildren("childref")) {
+				String childURL = childRef.getAttributeValue("url");
+				if (childURL != null && !reachable.contains(childURL))
+					queue.add(childURL);
+			}
+		}
+		return reachable;
+	}
+
+	/**
+	 * @param roots - URLs of root pages
+	 * @return root URLs in the form they are cached under, if they are
+	 */
+	public
+	List<String> cacheKeysOf(Collection<String> roots) {
+		List<String> result = new ArrayList<>(roots.size());
+		for (String root: roots) {
+			String fixed = AbstractPage.fixURLString(null, root);
+			result.add((store.get(root) == null && fixed != null && store.get(fixed) != null)? fixed: root);
+		}
+		return result;
+	}
+
+	/**
+	 * @param roots - URLs of root pages
+	 * @return URLs of cached pages not reachable from roots
+	 * @throws IllegalArgumentException if none of the roots is cached
+	 */
+	public
+	List<String> findUnreachable(Collection<String> roots) {
+		boolean rootCached = false;
+		for (String root: cacheKeysOf(roots))
+			rootCached |= store.get(root) != null;
+		if (!rootCached)
+			throw new IllegalArgumentException("none of the root pages is cached: " + roots);
+		Set<String> reachable = findReachable(roots);
+		List<String> result = new ArrayList<>();
+		for (String url: store.urls())
+			if (!reachable.contains(url)) result.add(url);
+		return result;
+	}
+
+	/**
+	 * Removes pages not reachable from roots.
+	 * @param roots - URLs of root pages
+	 * @return URLs of removed pages
+	 * @throws IllegalArgumentException if none of the roots is cached
+	 */
+	public
+	List<String> collect(Collection<String> roots) {
+		List<String> unreachable = findUnreachable(roots);
+		for (String url: unreachable)
+			store.remove(url);
+		return unreachable;
+	}
+}
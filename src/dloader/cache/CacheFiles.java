@@ -0,0 +1,98 @@
+package dloader.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File handling shared by cache formats: a cache file is never written in place,
+ * but written aside and moved over the old one, so a crash leaves either the old or the new file.
+ * XML cache files named with COMPRESSED_EXTENSION are gzipped, they are read and written 
+ * through the codec as a stream.
+ */
+public class CacheFiles {
+
+	/**
+	 * extension of gzipped cache files, e.g. "pages_scan_cache.xml.gz"
+	 */
+	public static final String COMPRESSED_EXTENSION = ".gz";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private CacheFiles() {}
+
+	/**
+	 * @param file - cache file
+	 * @return true if the file is (to be) gzipped, judging by its name
+	 */
+	public static
+	boolean isCompressed(Path file) {
+		return file.getFileName().toString().toLowerCase().endsWith(COMPRESSED_EXTENSION);
+	}
+
+	/**
+	 * @param file - cache file to read
+	 * @return buffered stream of file contents, decompressed if the file is compressed
+	 * @throws IOException
+	 */
+	public static
+	InputStream newInputStream(Path file) throws IOException {
+		InputStream in = Files.newInputStream(file);
+		try {
+			return isCompressed(file)? 
+					new GZIPInputStream(in, BUFFER_SIZE): 
+					new BufferedInputStream(in, BUFFER_SIZE);
+		} catch (IOException e) {
+			in.close(); // not a gzip file
+			throw e;
+		}
+	}
+
+	/**
+	 * @param file - file to write, usually one from createTempFileFor()
+	 * @param compressed - true to gzip the contents
+	 * @return buffered stream writing into the file, closing it finishes compression
+	 * @throws IOException
+	 */
+	public static
+	OutputStream newOutputStream(Path file, boolean compressed) throws IOException {
+		OutputStream out = Files.newOutputStream(file);
+		return compressed? 
+				new GZIPOutputStream(out, BUFFER_SIZE): 
+				new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * @param target - file to be replaced
+	 * @return new empty file in the same directory as target (so it can be moved atomically)
+	 * @throws IOException
+	 */
+	public static
+	Path createTempFileFor(Path target) throws IOException {
+		return Files.createTempFile(target.toAbsolutePath().getParent(), "tmp_cache_", "");
+	}
+
+	/**
+	 * Moves a fully written file over the target. The move is atomic where the file system supports it,
+	 * otherwise a plain replace is done.
+	 * @param written - file to move
+	 * @param target - file to replace
+	 * @throws IOException
+	 */
+	public static
+	void replace(Path written, Path target) throws IOException {
+		try {
+			Files.move(written, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(written, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
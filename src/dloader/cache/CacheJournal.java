@@ -0,0 +1,205 @@
+package dloader.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import dloader.Main;
+
+/**
+ * Append-only sidecar log of cache writes.
+ * Each entry is a single element serialized on its own line, so a run killed in the middle
+ * of a write loses at most that last incomplete line.
+ * While the cache file is being saved, entries already taken into the save are kept
+ * in a rotated file, so they survive a save that fails or is killed.
+ *
+ * This class is thread-safe.
+ */
+public class CacheJournal {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Path file;
+	
+	/**
+	 * entries handed over to a cache save that is not finished yet
+	 */
+	private final Path rotatedFile;
+
+	private final XMLOutputter outputter = new XMLOutputter(Format.getRawFormat());
+
+	/**
+	 * opened lazily on first append, closed on truncate
+	 */
+	private Writer writer;
+
+	/**
+	 * number of entries in the journal file (replayed and appended)
+	 */
+	private int size;
+
+	public CacheJournal(Path file) {
+		this.file = file;
+		this.rotatedFile = file.resolveSibling(file.getFileName() + ".1");
+	}
+
+	/**
+	 * @param cacheFile - cache file the journal belongs to
+	 * @return sidecar journal path for given cache file
+	 */
+	public static
+	Path journalFor(Path cacheFile) {
+		return cacheFile.resolveSibling(cacheFile.getFileName() + ".journal");
+	}
+
+	/**
+	 * Reads all entries from the journal file in order they were appended, 
+	 * entries of an unfinished save (rotated file) coming first.
+	 * Entries that can't be parsed (writes torn by a crash) are skipped.
+	 * @return list of journaled elements, empty if there is no journal.
+	 */
+	public synchronized
+	List<Element> readEntries() {
+		List<Element> result = new ArrayList<>();
+		readEntries(rotatedFile, result);
+		readEntries(file, result);
+		size = result.size();
+		return result;
+	}
+	
+	private static
+	void readEntries(Path file, List<Element> result) {
+		if (!Files.exists(file)) return;
+
+		SAXBuilder builder = new SAXBuilder();
+		int count = 0, damaged = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, UTF8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) continue;
+				try {
+					result.add(builder.build(new StringReader(line)).detachRootElement());
+					count++;
+				} catch (JDOMException e) {
+					if (damaged++ == 0)
+						Main.log(Level.WARNING, String.format("Journal <%s> is damaged after %d entries%n", file, count), e);
+				}
+			}
+			if (damaged > 0)
+				Main.log(Level.WARNING, String.format("%d damaged entries skipped in journal <%s>%n", damaged, file));
+		} catch (IOException e) {
+			Main.log(Level.WARNING, String.format("Error reading journal <%s>%n", file), e);
+		}
+	}
+
+	/**
+	 * Writes an entry to the end of the journal and flushes it to the OS.
+	 * If the journal ends with a torn entry, the new one is started on a line of its own.
+	 * @param e - element to journal
+	 * @throws IOException
+	 */
+	public synchronized
+	void append(Element e) throws IOException {
+		// raw format does not break lines, line feeds may appear in text only
+		String line = outputter.outputString(e).replace("\n", "&#xA;");
+		if (writer == null) {
+			boolean torn = !endsWithLineFeed(file);
+			writer = Files.newBufferedWriter(file, UTF8,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			if (torn)
+				writer.write('\n');
+		}
+		writer.write(line);
+		writer.write('\n');
+		writer.flush();
+		size++;
+	}
+
+	/**
+	 * Discards all entries, to be called after they are safely saved elsewhere.
+	 * @throws IOException
+	 */
+	public synchronized
+	void truncate() throws IOException {
+		close();
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(rotatedFile);
+		size = 0;
+	}
+	
+	/**
+	 * Sets current entries aside for a save of the cache file, new entries go to an empty journal. 
+	 * Entries left by a failed save are kept in front of them.
+	 * Must be called together with taking the snapshot to save, see discardRotated().
+	 * @throws IOException
+	 */
+	public synchronized
+	void rotate() throws IOException {
+		close();
+		if (!Files.exists(file)) return;
+		if (Files.exists(rotatedFile)) {
+			if (!endsWithLineFeed(rotatedFile))
+				Files.write(rotatedFile, new byte[] {'\n'}, StandardOpenOption.APPEND);
+			Files.write(rotatedFile, Files.readAllBytes(file), StandardOpenOption.APPEND);
+			Files.delete(file);
+		} else
+			Files.move(file, rotatedFile);
+		size = 0;
+	}
+	
+	/**
+	 * @return false if the file is not empty and its last line is not finished, true otherwise
+	 */
+	private static
+	boolean endsWithLineFeed(Path file) throws IOException {
+		if (!Files.exists(file)) return true;
+		try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+			if (channel.size() == 0) return true;
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(channel.size() - 1);
+			channel.read(last);
+			return last.get(0) == '\n';
+		}
+	}
+
+	/**
+	 * Discards entries set aside by rotate(), to be called after the save succeeded.
+	 * @throws IOException
+	 */
+	public synchronized
+	void discardRotated() throws IOException {
+		Files.deleteIfExists(rotatedFile);
+	}
+
+	/**
+	 * @return number of entries in the journal
+	 */
+	public synchronized
+	int size() {
+		return size;
+	}
+
+	public synchronized
+	void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package dloader.cache;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.jdom2.Element;
+
+/**
+ * Storage engine for data of previously downloaded pages.
+ * Pages are stored as JDOM elements identified by their "url" attribute.
+ * Stored elements are never modified, a put replaces them, so they are shared with readers as they are.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface CacheStore {
+
+	/**
+	 * Looks up a page by its URL
+	 * @param url - URL of a page cached
+	 * @return element for the page, or null if the page is not cached. 
+	 * The element may be shared and must NOT be modified (clone it to make changes).
+	 */
+	Element get(String url);
+
+	/**
+	 * Adds an element to the store, replacing previous element with the same "url" attribute.
+	 * The store keeps its own copy, so the argument can be modified afterwards.
+	 * @param e - the new element to add
+	 */
+	void put(Element e);
+
+	/**
+	 * Drops a page from the store, if it is there.
+	 * @param url - URL of a page cached
+	 */
+	void remove(String url);
+
+	/**
+	 * @return URLs of all pages stored, a snapshot not affected by later changes
+	 */
+	Collection<String> urls();
+
+	/**
+	 * Writes data to persistent storage, if the store has one.
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+}
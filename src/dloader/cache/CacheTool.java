@@ -0,0 +1,178 @@
+package dloader.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import dloader.XMLCache;
+
+/**
+ * Command-line maintenance of cache files, run as
+ * <pre>java -cp ... dloader.cache.CacheTool &lt;command&gt; [arguments]</pre>
+ */
+public class CacheTool {
+
+	private static void printUsage() {
+		System.out.print("Cache maintenance tool. Commands:\n"
+				+ "\tconvert <from> <to>\t converts cache file between XML and binary ('"
+				+ BinaryCacheFile.FILE_EXTENSION + "') formats, XML files named *"
+				+ CacheFiles.COMPRESSED_EXTENSION + " are gzipped\n"
+				+ "\tgc [-drop] <cache> <root URL>...\t lists pages that can't be reached from given root pages,\n"
+				+ "\t\t with -drop removes them from the cache file\n"
+				+ "\tquery <cache> <query>...\t lists pages matching each query, '-' reads queries from standard input.\n"
+				+ "\t\t Query is <key>=<value>[;<key>=<value>...], an empty value matches pages missing it,\n"
+				+ "\t\t a query of just <key> counts pages by its values. Keys: class, artist, album,\n"
+				+ "\t\t host (of track mediaLink), cover (host of album coverUrl)\n"
+				+ "\tchanges <cache> [<generation>]\t lists pages added, changed or removed after given generation\n"
+				+ "\t\t (by default, in the last one)\n"
+				);
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			printUsage();
+			return;
+		}
+		try {
+			switch (args[0].toLowerCase()) {
+			case "convert":
+				if (args.length != 3) break;
+				convert(Paths.get(args[1]), Paths.get(args[2]));
+				return;
+			case "gc":
+				boolean drop = args.length > 1 && args[1].equalsIgnoreCase("-drop");
+				int first = drop? 2: 1;
+				if (args.length < first + 2) break;
+				gc(Paths.get(args[first]), Arrays.asList(args).subList(first + 1, args.length), drop);
+				return;
+			case "changes":
+				if (args.length != 2 && args.length != 3) break;
+				changes(Paths.get(args[1]), args.length == 3? Integer.parseInt(args[2]): -1);
+				return;
+			case "query":
+				if (args.length < 3) break;
+				query(Paths.get(args[1]), Arrays.asList(args).subList(2, args.length));
+				return;
+			}
+			printUsage();
+		} catch (IOException|IllegalArgumentException e) {
+			System.out.println("Error: " + e);
+		}
+	}
+
+	private static void convert(Path from, Path to) throws IOException {
+		boolean fromBinary = BinaryCacheFile.isBinaryCacheFile(from);
+		if (fromBinary == BinaryCacheFile.isBinaryCacheFile(to))
+			throw new IOException("one of the files must be binary and the other XML");
+		int count = fromBinary?
+				BinaryCacheFile.convertToXML(from, to):
+				BinaryCacheFile.convertFromXML(from, to);
+		System.out.printf("%d pages converted from <%s> to <%s>%n", count, from, to);
+	}
+
+	/**
+	 * @param since - generation, -1 for the one before the last
+	 */
+	private static void changes(Path file, int since) throws IOException {
+		ChangeLog changeLog = new ChangeLog(ChangeLog.changeLogFor(file));
+		int last = changeLog.getGeneration() - 1;
+		if (since < 0) since = Math.max(0, last - 1);
+		Map<String, ChangeLog.Kind> changes = changeLog.readChangesSince(since);
+		System.out.printf("# last generation %d, %d pages changed since generation %d%n", last, changes.size(), since);
+		for (Map.Entry<String, ChangeLog.Kind> change: changes.entrySet())
+			System.out.println(change.getValue().name().toLowerCase() + "\t" + change.getKey());
+	}
+
+	private static void query(Path file, List<String> queries) throws IOException {
+		if (!Files.exists(file))
+			throw new NoSuchFileException(file.toString());
+		if (queries.equals(Arrays.asList("-"))) {
+			queries = new ArrayList<>();
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+			String line;
+			while ((line = in.readLine()) != null)
+				if (!line.trim().isEmpty()) queries.add(line.trim());
+		}
+		XMLCache cache = new XMLCache(file.toString(), true);
+		try {
+			IndexedCacheStore indexed = new IndexedCacheStore(cache);
+			for (String query: queries) {
+				if (!query.contains("=")) {
+					Map<String, Integer> counts = indexed.countValues(IndexedCacheStore.Key.forName(query));
+					System.out.printf("# %s: %d values%n", query, counts.size());
+					for (Map.Entry<String, Integer> count: new TreeMap<>(counts).entrySet())
+						System.out.printf("%d\t%s%n", count.getValue(), count.getKey());
+					continue;
+				}
+				Map<IndexedCacheStore.Key, String> criteria = new EnumMap<>(IndexedCacheStore.Key.class);
+				for (String criterion: query.split(";")) {
+					int eq = criterion.indexOf('=');
+					if (eq < 0) 
+						throw new IllegalArgumentException("not a <key>=<value> pair: " + criterion);
+					criteria.put(IndexedCacheStore.Key.forName(criterion.substring(0, eq)), 
+							criterion.substring(eq + 1));
+				}
+				Set<String> urls = new TreeSet<>(indexed.find(criteria));
+				System.out.printf("# %s: %d pages%n", query, urls.size());
+				for (String url: urls)
+					System.out.println(url);
+			}
+		} finally {
+			cache.close();
+		}
+	}
+
+	private static void gc(Path file, List<String> roots, boolean drop) throws IOException {
+		if (!Files.exists(file))
+			throw new NoSuchFileException(file.toString());
+		long sizeBefore = Files.size(file);
+		XMLCache cache = new XMLCache(file.toString(), true); // journal of an interrupted run counts too
+		ChangeLog changeLog = new ChangeLog(ChangeLog.changeLogFor(file));
+		CacheStore store = new ChangeTrackingCacheStore(cache, changeLog); // dropped pages are changes too
+		try {
+			CacheCollector collector = new CacheCollector(store);
+			int total = cache.urls().size();
+			List<String> unreachable = collector.findUnreachable(roots);
+			long xmlSize = 0;
+			XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+			for (String url: unreachable) {
+				System.out.println(url);
+				Element e = cache.get(url);
+				if (e != null) 
+					xmlSize += outputter.outputString(e).getBytes(Charset.forName("UTF-8")).length;
+			}
+			System.out.printf("%d of %d pages can't be reached from %s%n", 
+					unreachable.size(), total, collector.cacheKeysOf(roots));
+			if (!drop) {
+				System.out.printf("%d bytes of XML can be reclaimed with -drop%n", xmlSize);
+				return;
+			}
+			for (String url: unreachable)
+				store.remove(url);
+			store.flush();
+			long sizeAfter = Files.size(file);
+			System.out.printf("%d pages dropped, %d bytes reclaimed (<%s> is %d bytes now)%n", 
+					unreachable.size(), sizeBefore - sizeAfter, file, sizeAfter);
+		} finally {
+			cache.close();
+			changeLog.close();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package dloader.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import dloader.Main;
+
+/**
+ * Append-only sidecar log of pages added, changed and removed, by generation.
+ * A generation is a run of the program that changed anything; each log opened
+ * writes under the generation next to the last one in the file.
+ * Each entry is a line "generation TAB kind TAB url".
+ *
+ * This class is thread-safe.
+ */
+public class ChangeLog {
+
+	public enum Kind { ADDED, CHANGED, REMOVED }
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Path file;
+
+	/**
+	 * generation of entries written by this object
+	 */
+	private final int generation;
+
+	/**
+	 * opened lazily on first entry
+	 */
+	private Writer writer;
+
+	/**
+	 * entries written in this generation, by kind
+	 */
+	private final int[] counts = new int[Kind.values().length];
+
+	/**
+	 * Reads the log to find the last generation.
+	 * @param file - change log file, may not exist yet
+	 */
+	public ChangeLog(Path file) {
+		this.file = file;
+		generation = readLastGeneration(file) + 1;
+	}
+
+	/**
+	 * @param cacheFile - cache file the log belongs to
+	 * @return sidecar change log path for given cache file
+	 */
+	public static
+	Path changeLogFor(Path cacheFile) {
+		return cacheFile.resolveSibling(cacheFile.getFileName() + ".changes");
+	}
+
+	private static
+	int readLastGeneration(Path file) {
+		int last = 0;
+		if (!Files.exists(file)) return last;
+		try (BufferedReader reader = Files.newBufferedReader(file, UTF8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab > 0)
+					try {
+						last = Math.max(last, Integer.parseInt(line.substring(0, tab)));
+					} catch (NumberFormatException e) {} // torn line
+			}
+		} catch (IOException e) {
+			Main.log(Level.WARNING, String.format("Error reading change log <%s>%n", file), e);
+		}
+		return last;
+	}
+
+	/**
+	 * @return generation this log writes entries under
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Appends an entry for current generation and flushes it to the OS.
+	 * @param kind - what happened to the page
+	 * @param url - URL of the page
+	 * @throws IOException
+	 */
+	public synchronized
+	void record(Kind kind, String url) throws IOException {
+		if (writer == null)
+			writer = Files.newBufferedWriter(file, UTF8,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		writer.write(generation + "\t" + kind.name().toLowerCase() + "\t" + url + "\n");
+		writer.flush();
+		counts[kind.ordinal()]++;
+	}
+
+	/**
+	 * @param kind - kind of change
+	 * @return number of entries of the kind written in current generation
+	 */
+	public synchronized
+	int getCount(Kind kind) {
+		return counts[kind.ordinal()];
+	}
+
+	/**
+	 * Reads what happened to pages after given generation. A page changed several times 
+	 * is reported once: as added if it was added, as removed if it was removed last.
+	 * Entries of earlier generations are only skipped, not parsed.
+	 * @param sinceGeneration - last generation already known to the caller, 0 for everything
+	 * @return URL to its change, in order of first change
+	 * @throws IOException
+	 */
+	public synchronized
+	Map<String, Kind> readChangesSince(int sinceGeneration) throws IOException {
+		Map<String, Kind> result = new LinkedHashMap<>();
+		if (!Files.exists(file)) return result;
+		try (BufferedReader reader = Files.newBufferedReader(file, UTF8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", 3);
+				if (fields.length < 3) continue; // torn line
+				int lineGeneration;
+				Kind kind;
+				try {
+					lineGeneration = Integer.parseInt(fields[0]);
+					kind = Kind.valueOf(fields[1].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					continue; 
+				}
+				if (lineGeneration <= sinceGeneration) continue;
+				Kind previous = result.get(fields[2]);
+				if (previous == Kind.ADDED && kind == Kind.CHANGED) continue; // still new to the caller
+				result.put(fields[2], (previous == Kind.REMOVED && kind != Kind.REMOVED)? Kind.CHANGED: kind);
+			}
+		}
+		return result;
+	}
+
+	public synchronized
+	void flush() throws IOException {
+		if (writer != null) 
+			writer.flush();
+	}
+
+	public synchronized
+	void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+}
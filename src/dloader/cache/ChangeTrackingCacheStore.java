@@ -0,0 +1,161 @@
+package dloader.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import dloader.Main;
+
+/**
+ * Cache store wrapper recording pages added, changed and removed into a ChangeLog.
+ * Each stored page gets a "gen" attribute: the generation it was last added or changed in.
+ * A page put with the same data as stored (save for HTTP validators and check time) 
+ * is not a change and keeps its generation.
+ *
+ * This class is thread-safe.
+ */
+public class ChangeTrackingCacheStore implements CacheStore {
+
+	/**
+	 * attribute holding generation of the last change of a page
+	 */
+	public static final String GENERATION_ATTRIBUTE = "gen";
+
+	/**
+	 * attributes that change without the page changing
+	 */
+	private static final String[] VOLATILE_ATTRIBUTES = {GENERATION_ATTRIBUTE, "etag", "lastModified", "checked", "hash"};
+
+	/**
+	 * number of locks writes of pages are spread over
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * locks of writes by URL hash, so a write waiting for the stored page 
+	 * (e.g. one not loaded yet) does not hold up writes of other pages
+	 */
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	private final CacheStore store;
+
+	private final ChangeLog changeLog;
+
+	private static final Format FORMAT = Format.getRawFormat();
+
+	public ChangeTrackingCacheStore(CacheStore store, ChangeLog changeLog) {
+		this.store = store;
+		this.changeLog = changeLog;
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new Object();
+	}
+
+	public ChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	@Override
+	public Element get(String url) {
+		return store.get(url);
+	}
+
+	/**
+	 * @return lock guarding writes of the page
+	 */
+	Object lockFor(String url) {
+		return locks[(url.hashCode() & Integer.MAX_VALUE) % locks.length];
+	}
+
+	/**
+	 * Compares the page with the stored one. Locked by URL, so the comparison and the write are not
+	 * interleaved with another write of the same page.
+	 */
+	@Override
+	public
+	void put(Element e) {
+		String url = e.getAttributeValue("url");
+		if (url == null) return;
+		synchronized (lockFor(url)) {
+			putLocked(url, e);
+		}
+	}
+
+	private void putLocked(String url, Element e) {
+		Element old = store.get(url);
+		Element copy = e.clone();
+		ChangeLog.Kind kind = null;
+		if (old == null) 
+			kind = ChangeLog.Kind.ADDED;
+		else if (!stableData(old).equals(stableData(copy)))
+			kind = ChangeLog.Kind.CHANGED;
+		
+		if (kind == null && old.getAttributeValue(GENERATION_ATTRIBUTE) != null)
+			copy.setAttribute(GENERATION_ATTRIBUTE, old.getAttributeValue(GENERATION_ATTRIBUTE));
+		else if (kind == null)
+			copy.removeAttribute(GENERATION_ATTRIBUTE);
+		else 
+			copy.setAttribute(GENERATION_ATTRIBUTE, String.valueOf(changeLog.getGeneration()));
+		store.put(copy);
+		if (kind != null)
+			record(kind, url);
+	}
+
+	@Override
+	public
+	void remove(String url) {
+		synchronized (lockFor(url)) {
+			boolean existed = store.get(url) != null;
+			store.remove(url);
+			if (existed)
+				record(ChangeLog.Kind.REMOVED, url);
+		}
+	}
+
+	private void record(ChangeLog.Kind kind, String url) {
+		try {
+			changeLog.record(kind, url);
+		} catch (IOException e) {
+			Main.log(Level.WARNING, "Error writing cache change log", e);
+		}
+	}
+
+	/**
+	 * @return serialized element without volatile attributes, the rest sorted by name
+	 */
+	private String stableData(Element e) {
+		Element stable = e.clone();
+		for (String attribute: VOLATILE_ATTRIBUTES)
+			stable.removeAttribute(attribute);
+		List<Attribute> attributes = new ArrayList<>(stable.getAttributes());
+		Collections.sort(attributes, new Comparator<Attribute>() {
+			@Override
+			public int compare(Attribute a1, Attribute a2) {
+				return a1.getName().compareTo(a2.getName());
+			}
+		});
+		for (Attribute a: attributes) 
+			a.detach();
+		stable.setAttributes(attributes);
+		return new XMLOutputter(FORMAT).outputString(stable); // one per call, puts of different pages run at once
+	}
+
+	@Override
+	public Collection<String> urls() {
+		return store.urls();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		store.flush();
+		changeLog.flush();
+	}
+}
@@ -0,0 +1,204 @@
+package dloader.cache;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Element;
+
+/**
+ * Cache store wrapper keeping secondary indexes of pages, to answer questions like 
+ * "all tracks by artist X" or "albums missing a cover" without scanning the cache.
+ * Indexes are built from the wrapped store on construction and kept up to date by put() and remove().
+ *
+ * This class is thread-safe.
+ */
+public class IndexedCacheStore implements CacheStore {
+
+	/**
+	 * Indexed page properties. Missing or empty value is indexed as "".
+	 */
+	public enum Key {
+		/** page class, the element name: Discography, Album, Track */
+		CLASS, 
+		/** "artist" attribute of Track */
+		ARTIST, 
+		/** "album" attribute of Track */
+		ALBUM, 
+		/** host name of Track "mediaLink" attribute */
+		HOST, 
+		/** host name of Album "coverUrl" attribute */
+		COVER;
+
+		/**
+		 * @param name - key name, case insensitive
+		 * @return key with that name
+		 * @throws IllegalArgumentException if there is no such key
+		 */
+		public static
+		Key forName(String name) throws IllegalArgumentException {
+			return valueOf(name.trim().toUpperCase());
+		}
+
+		String valueOf(Element e) {
+			switch (this) {
+			case CLASS: return e.getName();
+			case ARTIST: return nonNull(e.getAttributeValue("artist"));
+			case ALBUM: return nonNull(e.getAttributeValue("album"));
+			case HOST: return hostOf(e.getAttributeValue("mediaLink"));
+			case COVER: return hostOf(e.getAttributeValue("coverUrl"));
+			}
+			throw new AssertionError(this);
+		}
+	}
+
+	private final CacheStore store;
+
+	/**
+	 * key to value to URLs of pages with the value (guarded by this)
+	 */
+	private final Map<Key, Map<String, Set<String>>> indexes = new EnumMap<>(Key.class);
+
+	/**
+	 * URL to values indexed for the page, in Key order (guarded by this)
+	 */
+	private final Map<String, String[]> indexed = new HashMap<>();
+
+	/**
+	 * Reads every page of the store to build indexes.
+	 * @param store - store to index
+	 */
+	public IndexedCacheStore(CacheStore store) {
+		this.store = store;
+		for (Key key: Key.values())
+			indexes.put(key, new HashMap<String, Set<String>>());
+		for (String url: store.urls()) {
+			Element e = store.get(url);
+			if (e != null) index(url, e);
+		}
+	}
+
+	private static
+	String nonNull(String s) {
+		return s == null? "": s;
+	}
+
+	private static
+	String hostOf(String link) {
+		if (link == null || link.isEmpty()) return "";
+		try {
+			return new URL(link).getHost().toLowerCase();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	private synchronized
+	void index(String url, Element e) {
+		unindex(url);
+		String[] values = new String[Key.values().length];
+		for (Key key: Key.values()) {
+			values[key.ordinal()] = key.valueOf(e);
+			Set<String> urls = indexes.get(key).get(values[key.ordinal()]);
+			if (urls == null) {
+				urls = new HashSet<>();
+				indexes.get(key).put(values[key.ordinal()], urls);
+			}
+			urls.add(url);
+		}
+		indexed.put(url, values);
+	}
+
+	private synchronized
+	void unindex(String url) {
+		String[] values = indexed.remove(url);
+		if (values == null) return;
+		for (Key key: Key.values()) {
+			Set<String> urls = indexes.get(key).get(values[key.ordinal()]);
+			urls.remove(url);
+			if (urls.isEmpty()) 
+				indexes.get(key).remove(values[key.ordinal()]);
+		}
+	}
+
+	/**
+	 * @param key - indexed property
+	 * @param value - value to look for, "" for pages missing it
+	 * @return URLs of pages with the value
+	 */
+	public synchronized
+	Set<String> find(Key key, String value) {
+		Set<String> urls = indexes.get(key).get(value);
+		return urls == null? new HashSet<String>(): new HashSet<>(urls);
+	}
+
+	/**
+	 * @param criteria - indexed properties and values to look for
+	 * @return URLs of pages matching all the criteria (all pages if there are none)
+	 */
+	public synchronized
+	Set<String> find(Map<Key, String> criteria) {
+		Set<String> result = null;
+		for (Map.Entry<Key, String> criterion: criteria.entrySet()) {
+			Set<String> urls = indexes.get(criterion.getKey()).get(criterion.getValue());
+			if (urls == null) return new HashSet<>();
+			if (result == null) 
+				result = new HashSet<>(urls);
+			else
+				result.retainAll(urls);
+		}
+		return result == null? new HashSet<>(indexed.keySet()): result;
+	}
+
+	/**
+	 * @param key - indexed property
+	 * @return number of pages by each value of the property
+	 */
+	public synchronized
+	Map<String, Integer> countValues(Key key) {
+		Map<String, Integer> result = new HashMap<>();
+		for (Map.Entry<String, Set<String>> entry: indexes.get(key).entrySet())
+			result.put(entry.getKey(), entry.getValue().size());
+		return result;
+	}
+
+	@Override
+	public Element get(String url) {
+		return store.get(url);
+	}
+
+	/**
+	 * Locked together with indexing, so index follows the order of writes to the store.
+	 */
+	@Override
+	public synchronized
+	void put(Element e) {
+		String url = e.getAttributeValue("url");
+		store.put(e);
+		if (url != null) 
+			index(url, e);
+	}
+
+	@Override
+	public synchronized
+	void remove(String url) {
+		store.remove(url);
+		unindex(url);
+	}
+
+	@Override
+	public Collection<String> urls() {
+		return store.urls();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		store.flush();
+	}
+}
@@ -0,0 +1,51 @@
+package dloader.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jdom2.Element;
+
+/**
+ * Cache store which keeps everything in memory and never persists, 
+ * for tests and benchmarks.
+ *
+ * This class is thread-safe.
+ */
+public class MemoryCacheStore implements CacheStore {
+
+	private final ConcurrentHashMap<String, Element> pages = new ConcurrentHashMap<>();
+
+	@Override
+	public Element get(String url) {
+		return pages.get(url);
+	}
+
+	@Override
+	public void put(Element e) {
+		String url = e.getAttributeValue("url");
+		if (url != null)
+			pages.put(url, e.clone());
+	}
+
+	@Override
+	public void remove(String url) {
+		pages.remove(url);
+	}
+
+	@Override
+	public Collection<String> urls() {
+		return new ArrayList<>(pages.keySet());
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * @return number of pages stored
+	 */
+	public int size() {
+		return pages.size();
+	}
+}
@@ -0,0 +1,120 @@
+package dloader.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Raw pages as they were downloaded, gzipped, so page data can be parsed anew 
+ * (when parsing rules change) without going to the network.
+ * A page is kept in a file of its own, named by hash of its URL, under a directory
+ * per host (as shards of ShardedCacheStore are named).
+ * Only the last body downloaded for a URL is kept.
+ *
+ * This class is thread-safe: a page file is written aside and moved in place.
+ */
+public class PageArchive {
+
+	static final String FILE_EXTENSION = ".html" + CacheFiles.COMPRESSED_EXTENSION;
+
+	private final Path directory;
+
+	/**
+	 * @param directory - archive directory, created on first page put
+	 */
+	public PageArchive(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param cacheFile - cache file the archive goes with
+	 * @return archive directory for given cache file
+	 */
+	public static
+	Path directoryFor(Path cacheFile) {
+		String name = cacheFile.getFileName().toString();
+		if (CacheFiles.isCompressed(cacheFile))
+			name = name.substring(0, name.length() - CacheFiles.COMPRESSED_EXTENSION.length());
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return cacheFile.resolveSibling(name + ".pages");
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @param url - page URL
+	 * @return file the page is kept in
+	 */
+	Path fileOf(String url) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
+		}
+		StringBuilder name = new StringBuilder();
+		for (byte b: digest.digest(url.getBytes(StandardCharsets.UTF_8)))
+			name.append(String.format("%02x", b));
+		return directory.resolve(ShardedCacheStore.shardOf(url)).resolve(name.append(FILE_EXTENSION).toString());
+	}
+
+	/**
+	 * Stores page body, replacing one stored before.
+	 * @param url - page URL
+	 * @param body - page body as downloaded
+	 * @throws IOException
+	 */
+	public
+	void put(String url, byte[] body) throws IOException {
+		Path file = fileOf(url);
+		Files.createDirectories(file.getParent());
+		Path tmpFile = CacheFiles.createTempFileFor(file);
+		try {
+			try (OutputStream out = CacheFiles.newOutputStream(tmpFile, true)) {
+				out.write(body);
+			}
+			CacheFiles.replace(tmpFile, file);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	/**
+	 * @param url - page URL
+	 * @return page body as it was stored, null if the page is not in the archive
+	 * @throws IOException
+	 */
+	public
+	byte[] get(String url) throws IOException {
+		try (InputStream in = CacheFiles.newInputStream(fileOf(url))) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buff = new byte[64 * 1024];
+			int numRead;
+			while ((numRead = in.read(buff)) != -1)
+				body.write(buff, 0, numRead);
+			return body.toByteArray();
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param url - page URL
+	 * @return true if the page is in the archive
+	 */
+	public
+	boolean contains(String url) {
+		return Files.exists(fileOf(url));
+	}
+}
@@ -0,0 +1,266 @@
+package dloader.cache;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.jdom2.Element;
+
+import dloader.XMLCache;
+
+/**
+ * Cache store split into shards by host of page URL, so every *.bandcamp.com artist
+ * gets a cache file of its own in the store directory.
+ * Shards are opened on first access to one of their pages and only shards changed
+ * since the last flush are saved, so a run that goes through one artist
+ * reads and writes only that artist's pages.
+ * Each shard is a journaled XMLCache (XML or binary, by file extension).
+ * Shards are loaded and autosaved by a few threads shared by all of them, 
+ * so the number of threads does not grow with the number of artists.
+ *
+ * This class is thread-safe.
+ */
+public class ShardedCacheStore implements CacheStore {
+
+	/**
+	 * shard for pages whose URL has no host
+	 */
+	static final String NO_HOST_SHARD = "_";
+
+	private final Path directory;
+
+	/**
+	 * extension of shard files, selects XML or binary format
+	 */
+	private final String extension;
+
+	private final ConcurrentMap<String, XMLCache> shards = new ConcurrentHashMap<>();
+
+	/**
+	 * shards written to since last flush
+	 */
+	private final Set<String> changed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile XMLCache.LoadPolicy loadPolicy = XMLCache.LoadPolicy.BLOCK;
+
+	/**
+	 * number of threads loading and autosaving shards
+	 */
+	static final int THREADS = 2;
+
+	/**
+	 * runs loading and autosave of all shards
+	 */
+	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(THREADS, 
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "cache shards");
+					t.setDaemon(true); // must not keep application running
+					return t;
+				}
+			});
+
+	/**
+	 * @param directory - directory of shard files, created if missing
+	 * @param extension - extension of shard files, ".xml", ".xml.gz" (see CacheFiles) 
+	 * or BinaryCacheFile.FILE_EXTENSION
+	 * @throws IOException if directory can't be created
+	 */
+	public ShardedCacheStore(Path directory, String extension) throws IOException {
+		this.directory = directory;
+		this.extension = extension;
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * @param cacheFile - single-file cache the sharded one replaces
+	 * @return shard directory for given cache file
+	 */
+	public static
+	Path directoryFor(Path cacheFile) {
+		String name = cacheFile.getFileName().toString();
+		if (CacheFiles.isCompressed(cacheFile))
+			name = name.substring(0, name.length() - CacheFiles.COMPRESSED_EXTENSION.length());
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return cacheFile.resolveSibling(name + ".shards");
+	}
+
+	/**
+	 * @param url - page URL
+	 * @return name of the shard the page belongs to: lowercase host of the URL, safe for a file name
+	 */
+	static
+	String shardOf(String url) {
+		int start = url.indexOf("://");
+		start = (start < 0)? 0: start + 3;
+		int end = start;
+		while (end < url.length() && "/:?#".indexOf(url.charAt(end)) < 0)
+			end++;
+		int at = url.lastIndexOf('@', end - 1);
+		if (at >= start) start = at + 1;
+		if (start == end) return NO_HOST_SHARD;
+
+		StringBuilder name = new StringBuilder(end - start);
+		for (char c: url.substring(start, end).toLowerCase().toCharArray())
+			name.append((c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '.' || c == '-')? c: '_');
+		return name.toString();
+	}
+
+	/**
+	 * Opens the shard unless it is open already.
+	 */
+	private XMLCache shard(String name) {
+		XMLCache shard = shards.get(name);
+		if (shard != null) return shard;
+		synchronized (shards) {
+			shard = shards.get(name);
+			if (shard == null) {
+				shard = new XMLCache(directory.resolve(name + extension).toString(), executor);
+				shard.setLoadPolicy(loadPolicy);
+				shards.put(name, shard);
+			}
+			return shard;
+		}
+	}
+
+	/**
+	 * @param policy - how lookups treat pages of a shard not loaded yet, BLOCK by default
+	 * @see XMLCache#setLoadPolicy(XMLCache.LoadPolicy)
+	 */
+	public void setLoadPolicy(XMLCache.LoadPolicy policy) {
+		loadPolicy = policy;
+		for (XMLCache shard: shards.values())
+			shard.setLoadPolicy(policy);
+	}
+
+	@Override
+	public
+	Element get(String url) {
+		return shard(shardOf(url)).get(url);
+	}
+
+	@Override
+	public
+	void put(Element e) {
+		String url = e.getAttributeValue("url");
+		if (url == null) return;
+		String name = shardOf(url);
+		shard(name).put(e);
+		changed.add(name);
+	}
+
+	@Override
+	public
+	void remove(String url) {
+		String name = shardOf(url);
+		XMLCache shard = shard(name);
+		if (shard.get(url) == null) return;
+		shard.remove(url);
+		changed.add(name);
+	}
+
+	/**
+	 * Opens all shards.
+	 */
+	@Override
+	public
+	Collection<String> urls() {
+		Collection<String> result = new ArrayList<>();
+		for (String name: shardNames())
+			result.addAll(shard(name).urls());
+		return result;
+	}
+
+	/**
+	 * @return names of shards in the directory, including those having only a journal left
+	 * by an interrupted run, and shards opened but not saved yet
+	 */
+	public
+	Set<String> shardNames() {
+		Set<String> result = new TreeSet<>(shards.keySet());
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file: files) {
+				String name = file.getFileName().toString();
+				for (String suffix: new String[] {extension, extension + ".journal", extension + ".journal.1"})
+					if (name.endsWith(suffix) && name.length() > suffix.length()) {
+						result.add(name.substring(0, name.length() - suffix.length()));
+						break;
+					}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("can't list cache shards in <" + directory + ">", e);
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of shards opened so far
+	 */
+	public int getOpenShardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Saves shards changed since the last flush, the rest is left as it is.
+	 * A shard failing to save does not stop others from being saved.
+	 * @throws IOException - the first error, after all shards have been tried
+	 */
+	@Override
+	public
+	void flush() throws IOException {
+		IOException error = null;
+		for (String name: new ArrayList<>(changed)) {
+			changed.remove(name); // puts during the save mark it again
+			try {
+				shards.get(name).saveCache();
+			} catch (IOException e) {
+				changed.add(name);
+				if (error == null) error = e;
+			}
+		}
+		if (error != null) throw error;
+	}
+
+	/**
+	 * Copies all pages of another store into shards and saves them.
+	 * @param source - store to copy from, e.g. the single-file cache
+	 * @return number of pages copied
+	 * @throws IOException
+	 */
+	public
+	int importFrom(CacheStore source) throws IOException {
+		int count = 0;
+		for (String url: source.urls()) {
+			Element e = source.get(url);
+			if (e == null) continue;
+			put(e);
+			count++;
+		}
+		flush();
+		return count;
+	}
+
+	/**
+	 * Stops autosave of open shards and releases their journals. Does not save anything.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		for (XMLCache shard: shards.values())
+			shard.close();
+		executor.shutdownNow();
+	}
+}
@@ -590,6 +590,8 @@ public class GUI extends JFrame {
 	
 	/**
 	 * Search the list for appropriate preexisting wrapper for given page. If not exists create a new wrapper. 
+	 * Wrappers are matched by page identity: a page put in place of another one at the same address 
+	 * (page type corrected) gets a wrapper of its own.
 	 * @param list - list of existing wrappers. Might be null.
 	 * @param page
 	 * @return a TreeNodePageWrapper object for a page object provided.
@@ -598,7 +600,7 @@ public class GUI extends JFrame {
 	TreeNodePageWrapper searchListForPageWrapperOrCreateNew(List<TreeNodePageWrapper> list, AbstractPage page) {
 		if (list == null) return new TreeNodePageWrapper(page, (DefaultTreeModel) tree.getModel());
 		for (TreeNodePageWrapper element: list)
-			if (element.page.url.equals(page.url))
+			if (element.page == page)
 				return element;
 		return new TreeNodePageWrapper(page, (DefaultTreeModel) tree.getModel());
 	}
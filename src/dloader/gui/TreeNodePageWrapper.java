@@ -41,6 +41,8 @@ public class TreeNodePageWrapper extends DefaultMutableTreeNode {
 	boolean downloaded = false;
 	boolean downloadPageFailed = false;
 	boolean upToDate = false;
+	boolean pageTypeCorrected = false;
+	boolean pageTypeMismatch = false;
 	
 	boolean mustSavePage = false;
 	
@@ -96,6 +98,12 @@ public class TreeNodePageWrapper extends DefaultMutableTreeNode {
 		case "download failed": 
 			downloading = false; downloadPageFailed = true; 
 			updateVisuals = true; updateParent = true; break;
+		case "page type corrected": 
+			pageTypeCorrected = true; downloadPageQ = false; 
+			updateVisuals = true; updateParent = true; break;
+		case "page type mismatch": 
+			pageTypeMismatch = true; 
+			updateVisuals = true; break;
 
 		// messages reported by CheckSavingJob:
 		case "saving not required":
@@ -199,10 +207,12 @@ public class TreeNodePageWrapper extends DefaultMutableTreeNode {
 			title = title + " (Scanning...)";
 		} 
 		else if (downloadPageFailed) {
-			title = "Scan failed: " + title;
+			title = (pageTypeMismatch? "Wrong page type: ": "Scan failed: ") + title;
 			styleCompilation += "span#title {font: bold}";
 		} else if (downloadPageQ) {
 			title = title + " (In queue for scan...)";
+		} else if (pageTypeCorrected) {
+			title = title + " (page type corrected)";
 		}
 		
 		if (mustSavePage || saving) {
@@ -1,33 +1,36 @@
 package dloader.page;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import java.util.logging.Level;
 
 import org.jdom2.*;
 import org.jdom2.filter.ElementFilter;
-import org.jdom2.filter.Filters;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.input.sax.XMLReaderSAX2Factory;
 import org.jdom2.output.XMLOutputter;
-import org.jdom2.xpath.XPathBuilder;
 import org.jdom2.xpath.XPathExpression;
-import org.jdom2.xpath.XPathFactory;
 
 import dloader.Main;
+import dloader.StatisticGatherer;
 import dloader.WebDownloader;
-import dloader.XMLCache;
+import dloader.XPathCache;
+import dloader.cache.CacheStore;
+import dloader.cache.PageArchive;
 import dloader.pagejob.ProgressReporter;
 
 
@@ -35,7 +38,7 @@ import dloader.pagejob.ProgressReporter;
 
 //XXX: sad day. bandcamp allows to break hierarchy and put "track" right into "discography"
 
-//XXX: switch url from URL to URI and support both "http" and "file" protocols natively (without nasty tricks for JUnit)
+//XXX: support both "http" and "file" protocols natively (without nasty tricks for JUnit)
 
 /**
  * Basic class to maintain page-relevant data and procedures, embodies one "download session", i.e. URL-to-files
@@ -59,6 +62,31 @@ public abstract class AbstractPage {
 		public ProblemsReadingDocumentException(Throwable e) {super(e);}
 	}
 	
+	/**
+	 * Exception generated if downloaded document is of other page type than this page 
+	 * (see PageTypeSniffer). It holds the document and HTTP validators of its response, 
+	 * so a page of the right type can take it without downloading it again (see parseFrom()).
+	 */
+	@SuppressWarnings("serial")
+	public class PageTypeMismatchException extends ProblemsReadingDocumentException {
+		/** page class the document is of */
+		public final Class<? extends AbstractPage> detectedType;
+		private final byte[] body;
+		private final String hash;
+		private final String eTag, lastModified;
+		
+		PageTypeMismatchException(Class<? extends AbstractPage> detectedType, byte[] body, String hash,
+				String eTag, String lastModified) {
+			super(String.format("%s is %s page, not %s", url, detectedType.getSimpleName(), 
+					AbstractPage.this.getClass().getSimpleName()));
+			this.detectedType = detectedType;
+			this.body = body;
+			this.hash = hash;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+	}
+	
 	/** 
 	 * title of this item. Can be null.
 	 */
@@ -70,9 +98,16 @@ public abstract class AbstractPage {
 	private AbstractPage parent;
 	
 	/**
-	 * URL of a page referencing this item 
+	 * Address of a page referencing this item, identity of the page.
+	 * URI and not URL, as URL.equals() and URL.hashCode() resolve host names; 
+	 * URL is only made to open a connection.
+	 */
+	public final URI url;
+	
+	/**
+	 * url as string, interned, to compare pages by
 	 */
-	public final URL url;
+	final String key;
 	
 	/**
 	 * Directory where to save this page's data
@@ -85,17 +120,47 @@ public abstract class AbstractPage {
 	 * through children at any given moment.
 	 * This list is empty on construction and filled with elements by loadFromCache() and updateFromNet() calls.
 	 * Due to efficiency issues, elements should be added as .addAll(...) when possible
+	 * Children set by this class are indexed by address for lookups (see childrenByKey).
+	 * Pages that never have children share one list that stays empty (NO_CHILDREN).
 	 */
 	public final 
-	List<AbstractPage> childPages = new CopyOnWriteArrayList<>(); 
+	List<AbstractPage> childPages; 
+	
+	/**
+	 * childPages of pages that never have children, immutable
+	 */
+	static final List<AbstractPage> NO_CHILDREN = Collections.emptyList();
+	
+	/**
+	 * Children by address, the first one of several with the same address.
+	 * Built anew whenever this class sets childPages, null if they were never set.
+	 */
+	private volatile Map<String, AbstractPage> childrenByKey;
+	
+	/**
+	 * HTTP validators of the last download, to ask the server if the page changed since. 
+	 * Can be null.
+	 */
+	private String eTag, lastModified;
+	
+	/**
+	 * Hash of the last downloaded body (see BodyHash), a page with the same body is not parsed again.
+	 * Can be null.
+	 */
+	private String bodyHash;
+	
+	/**
+	 * When the page was last downloaded or confirmed unchanged by server (ms since epoch), 0 if never 
+	 */
+	private long lastChecked;
 	
 
 	/**
 	 * Cache to operate cache-related functions
-	 * @return
+	 * @return current cache store, may be null
 	 */
 	static
-	private XMLCache getCache() {
+	private CacheStore getCache() {
 		return Main.cache; //default cache location. 
 	}
 
@@ -115,6 +180,26 @@ public abstract class AbstractPage {
 	
 	public synchronized final
 	void setTitle(String title) {this.title = title;}
+	
+	/**
+	 * 
+	 * @return time when page data was last downloaded or confirmed unchanged (ms since epoch), 0 if unknown
+	 */
+	public synchronized final
+	long getLastChecked() {return lastChecked;}
+	
+	/**
+	 * Copies HTTP validators and check time from another page
+	 */
+	private synchronized
+	void copyValidators(AbstractPage from) {
+		synchronized (from) {
+			eTag = from.eTag;
+			lastModified = from.lastModified;
+			bodyHash = from.bodyHash;
+			lastChecked = from.lastChecked;
+		}
+	}
 
 	/**
 	 * Constructs from web address
@@ -124,12 +209,27 @@ public abstract class AbstractPage {
 	 * @throws IllegalArgumentException  
 	 */
 	public AbstractPage(String stringURL, String saveTo, AbstractPage parent) throws IllegalArgumentException {
-		try {url = resolveLink(stringURL);}
+		this(stringURL, saveTo, parent, false);
+	}
+
+	/**
+	 * Constructs from web address
+	 * @param stringURL - web address (required)
+	 * @param saveTo - where data of this page will be saved to (null if no children expected), 
+	 * interned as all children of a page have the same one
+	 * @param parent - parent page to this page, may be null 
+	 * @param leaf - true if the page never has children, its childPages is then the shared empty list
+	 * @throws IllegalArgumentException  
+	 */
+	protected AbstractPage(String stringURL, String saveTo, AbstractPage parent, boolean leaf) throws IllegalArgumentException {
+		try {url = toURI(resolveLink(stringURL));}
 		catch (MalformedURLException e) {throw new IllegalArgumentException(e);}
 		catch (NullPointerException e) {throw new IllegalArgumentException(e);}
+		key = url.toString().intern();
 
-		this.saveTo = saveTo;
+		this.saveTo = (saveTo == null)? null: saveTo.intern();
 		this.parent = parent;
+		childPages = leaf? NO_CHILDREN: new CopyOnWriteArrayList<AbstractPage>();
 	}
 
 	/**
@@ -193,6 +293,25 @@ public abstract class AbstractPage {
 	 */
 	protected abstract void parseSelf(Document doc) throws ProblemsReadingDocumentException;
 	
+	/**
+	 * Creates matcher of the queries the page reads after a download, so it can be parsed 
+	 * without building its document (see Main.streamingParse). 
+	 * Queries must include getChildNodesXPath() for any outcome of parseSelf().
+	 * @return new matcher, or null if the page needs the whole document
+	 */
+	protected StreamingPathMatcher createMatcher() {
+		return null;
+	}
+	
+	/**
+	 * Extracts more information after a download about this page, 
+	 * from matches of queries given by createMatcher()
+	 * @param matcher - matcher the page was parsed with
+	 */
+	protected void parseSelf(StreamingPathMatcher matcher) throws ProblemsReadingDocumentException {
+		throw new ProblemsReadingDocumentException("page can't be parsed without its document");
+	}
+	
 	/**
 	 * Reads class-specific info from XML cache element.
 	 * Note: this is used two-fold. First, as intended it is reading data cached to XML; 
@@ -254,10 +373,8 @@ public abstract class AbstractPage {
 		if (query == null) return new ArrayList<Element>(0);
 		try {
 			String nsURI = doc.getNamespaceURI();
-			XPathBuilder<Element> xpb = new XPathBuilder<Element>(query,Filters.element()); // null filter
 			// binding prefix to existing namespace as per XML standard requirement
-			xpb.setNamespace("pre", nsURI);
-			XPathExpression<Element> xpe = xpb.compileWith(XPathFactory.instance()); // default factory
+			XPathExpression<Element> xpe = XPathCache.get(query, Namespace.getNamespace("pre", nsURI));
 			return xpe.evaluate(doc);
 		} catch (NullPointerException|IllegalStateException|IllegalArgumentException  e) {
 			Main.logger.log(Level.SEVERE,"",e);
@@ -293,7 +410,29 @@ public abstract class AbstractPage {
 	 * @throws MalformedURLException 
 	 */
 	protected URL resolveLink(String link) throws MalformedURLException {
-		return new URL(url, fixURLString(url, link));
+		URL base = (url == null)? null: url.toURL();
+		return new URL(base, fixURLString(base, link));
+	}
+	
+	/**
+	 * Converts resolved link to page identity. Its string form is the same as the link's,
+	 * unless the link has characters URI does not allow, those are quoted then.
+	 * @param u - resolved link
+	 * @return page address
+	 * @throws MalformedURLException if the link can't be made an URI 
+	 */
+	static
+	URI toURI(URL u) throws MalformedURLException {
+		try {
+			return u.toURI();
+		} catch (URISyntaxException e) {
+			try {
+				return new URI(u.getProtocol(), u.getUserInfo(), u.getHost(), u.getPort(), 
+						u.getPath(), u.getQuery(), u.getRef());
+			} catch (URISyntaxException e1) {
+				throw new MalformedURLException(e1.getMessage());
+			}
+		}
 	}
 
 	public final static 
@@ -317,53 +456,171 @@ public abstract class AbstractPage {
 		
 		Main.log(Level.FINE, String.format("Reading %s from cache...%n",url.toString()));
 		try {
-			Element e = getCache().getElementForPage(url.toString());
+			Element e = getCache().get(url.toString());
 			if (null == e) return false;
 			String t = e.getAttributeValue("title");
 			if (t == null) return false;
 			setTitle(t);  
 			readCacheSelf(e);
+			eTag = e.getAttributeValue("etag");
+			lastModified = e.getAttributeValue("lastModified");
+			bodyHash = e.getAttributeValue("hash");
+			try {
+				String checked = e.getAttributeValue("checked");
+				lastChecked = (checked == null)? 0: Long.parseLong(checked);
+			} catch (NumberFormatException e1) {
+				lastChecked = 0;
+			}
 			
-			Collection<AbstractPage> newChildren = new LinkedList<>();
-			Collection<Element> l = e.getContent(new ElementFilter("childref"));
-			for (Element el: l) 
-				newChildren.add(readCacheChild(el));
-			
-			mergeNewChildren(new LinkedList<>(childPages), newChildren);
+			if (childPages != NO_CHILDREN) { // childrefs of a leaf (an old or edited cache) are ignored
+				Collection<AbstractPage> newChildren = new LinkedList<>();
+				Collection<Element> l = e.getContent(new ElementFilter("childref"));
+				for (Element el: l) 
+					newChildren.add(readCacheChild(el));
+				
+				mergeNewChildren(new LinkedList<>(childPages), newChildren);
+			}
 			
 			Main.log(Level.FINE, String.format("\t...Finished reading %s.%n",url.toString()));
 			return true;
 		} catch (ProblemsReadingDocumentException|NullPointerException e) {
 			// If ANY problem, quit with a fail code
-			childPages.clear();
+			setChildren(Collections.<AbstractPage>emptyList());
 			setTitle(null);
+			eTag = lastModified = bodyHash = null;
+			lastChecked = 0;
 			return false;
 		}
 	}
 
 	/** 
 	 * Downloads the page, parses it and creates child nodes.
+	 * If the page has HTTP validators (from cache or previous download), the request is conditional
+	 * and the page is left as it is when server reports it not modified.
+	 * So it is when the downloaded body has the same hash as the one parsed last time, 
+	 * the body is not parsed then.
 	 * Note: children pages are dropped always. Their references are no longer part of the page tree.
 	 * Note2: it is better to invoke updateFromNet(), as it preserves children pages if they are identical to the new data
+	 * @return true if the page was downloaded and parsed, false if server reported it not modified 
+	 * or its body is unchanged
 	 * @throws ProblemsReadingDocumentException if any error
 	 * @throws InterruptedException 
 	 */
 	public final 
-	void downloadPage(ProgressReporter reporter) throws ProblemsReadingDocumentException, InterruptedException {
+	boolean downloadPage(ProgressReporter reporter) throws ProblemsReadingDocumentException, InterruptedException {
 		Main.log(Level.FINE, String.format("Downloading %s from network...%n", url.toString()));
 		
-		org.jdom2.Document doc = null;
+		URLConnection connection;
+		byte[] body;
 		try {
-			XMLReaderSAX2Factory saxConverter = new XMLReaderSAX2Factory(false, "org.ccil.cowan.tagsoup.Parser");
-			SAXBuilder builder = new SAXBuilder(saxConverter);
-			URLConnection connection = url.openConnection();
-			
+			long fetchStart = System.nanoTime();
+			connection = url.toURL().openConnection();
+			synchronized (this) {
+				if (eTag != null) 
+					connection.setRequestProperty("If-None-Match", eTag);
+				if (lastModified != null) 
+					connection.setRequestProperty("If-Modified-Since", lastModified);
+			}
 			
+			if (WebDownloader.checkHttpResponseNotModified(connection)) {
+				synchronized (this) {
+					lastChecked = System.currentTimeMillis();
+				}
+				Main.log(Level.FINE, String.format("...%s not modified.%n", url.toString()));
+				return false;
+			}
 			if (!WebDownloader.checkHttpResponseOK(connection))		
 				throw new ProblemsReadingDocumentException("Error response from server");
 			if (Thread.interrupted())
 				throw new InterruptedException();
-			doc = builder.build(connection.getInputStream());
+			// whole body first, so network and parsing times are told apart
+			body = WebDownloader.readWebPage(connection);
+			long fetchTime = System.nanoTime() - fetchStart;
+			StatisticGatherer.totalPageDownloadFinished.incrementAndGet();
+			StatisticGatherer.totalPageFetchNanos.addAndGet(fetchTime);
+			Main.log(Level.FINE, String.format("...%s: %d bytes fetched in %d ms%n", 
+					url.toString(), body.length, fetchTime / 1000000));
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ProblemsReadingDocumentException(e);
+		}
+		
+		String hash = BodyHash.of(body);
+		boolean unchanged;
+		synchronized (this) {
+			unchanged = hash.equals(bodyHash);
+		}
+		archive(body, unchanged);
+		if (!unchanged) {
+			if (Main.checkPageKind) {
+				Class<? extends AbstractPage> type = PageTypeSniffer.sniff(body);
+				if (type != null && !PageTypeSniffer.accepts(this, type)) {
+					StatisticGatherer.countPageTypeMisguess(getClass().getSimpleName());
+					throw new PageTypeMismatchException(type, body, hash, 
+							connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+				}
+			}
+			parseBody(body);
+		}
+		
+		synchronized (this) {
+			eTag = connection.getHeaderField("ETag");
+			lastModified = connection.getHeaderField("Last-Modified");
+			lastChecked = System.currentTimeMillis();
+			bodyHash = hash;
+		}
+		if (unchanged) {
+			StatisticGatherer.totalPageParseSkipped.incrementAndGet();
+			Main.log(Level.FINE, String.format("...%s unchanged.%n", url.toString()));
+			return false;
+		}
+		Main.log(Level.FINE, String.format("...finished %s.%n", url.toString()));
+		return true;
+	}
+	
+	/**
+	 * Keeps downloaded body in page archive (Main.archive), if there is one. 
+	 * Failure to do so is logged, the page itself is fine.
+	 * @param unchanged - true if the body was parsed before, then it is only stored if missing
+	 */
+	private
+	void archive(byte[] body, boolean unchanged) {
+		PageArchive archive = Main.archive;
+		if (archive == null) return;
+		try {
+			if (!unchanged || !archive.contains(url.toString()))
+				archive.put(url.toString(), body);
+		} catch (IOException e) {
+			Main.log(Level.WARNING, "unable to archive page " + url, e);
+		}
+	}
+	
+	/**
+	 * Parses page body and creates child nodes, dropping old ones.
+	 * @param body - page body as downloaded
+	 * @throws ProblemsReadingDocumentException if any error
+	 * @throws InterruptedException
+	 */
+	private
+	void parseBody(byte[] body) throws ProblemsReadingDocumentException, InterruptedException {
+		org.jdom2.Document doc = null;
+		StreamingPathMatcher matcher = Main.streamingParse? createMatcher(): null;
+		try {
+			long parseStart = System.nanoTime();
+			long allocatedBefore = StatisticGatherer.getThreadAllocatedBytes();
+			if (matcher != null)
+				matcher.parse(new ByteArrayInputStream(body));
+			else
+				doc = HtmlParsers.build(new ByteArrayInputStream(body));
+			long parseTime = System.nanoTime() - parseStart;
+			long allocated = (allocatedBefore < 0)? 0: StatisticGatherer.getThreadAllocatedBytes() - allocatedBefore;
+			StatisticGatherer.totalPageParseNanos.addAndGet(parseTime);
+			StatisticGatherer.totalPageParseAllocated.addAndGet(allocated);
+			Main.log(Level.FINE, String.format("...%s: %d bytes parsed in %d ms, %d KB allocated%n", 
+					url.toString(), body.length, parseTime / 1000000, allocated / 1024));
+			if (Thread.interrupted())
+				throw new InterruptedException();
 //		} catch (IOException|JDOMException e) {
 		} catch (InterruptedException e) {
 			throw e;
@@ -373,11 +630,15 @@ public abstract class AbstractPage {
 	
 		synchronized (this) {
 			// discover info about this page
-			parseSelf(doc);  
+			if (matcher != null)
+				parseSelf(matcher);
+			else
+				parseSelf(doc);  
 				
 			// discover info about children pages
-			childPages.clear();
-			Collection<Element> result = queryXPathList(getChildNodesXPath(), doc);
+			Collection<Element> result = (matcher != null)? 
+					matcher.getMatches(getChildNodesXPath()): 
+					queryXPathList(getChildNodesXPath(), doc);
 			List<AbstractPage> newChildren = new LinkedList<>();
 			for (Element el: result) 
 				try {
@@ -386,9 +647,69 @@ public abstract class AbstractPage {
 					Main.log(Level.WARNING, "unable to parse child data", e);
 				} // skip this child to next one
 
-			childPages.addAll(newChildren);
+			setChildren(newChildren);
 		}
-		Main.log(Level.FINE, String.format("...finished %s.%n", url.toString()));
+	}
+	
+	/**
+	 * Parses the document downloaded for another page at the same address, 
+	 * which turned out to be of this page type. HTTP validators of that download are taken too,
+	 * so the next check of this page is a conditional request.
+	 * Note: children pages are dropped, as with downloadPage().
+	 * @param e - mismatch the other page's download failed with
+	 * @throws ProblemsReadingDocumentException if the document can't be parsed
+	 * @throws InterruptedException 
+	 */
+	public final 
+	void parseFrom(PageTypeMismatchException e) throws ProblemsReadingDocumentException, InterruptedException {
+		parseBody(e.body);
+		synchronized (this) {
+			eTag = e.eTag;
+			lastModified = e.lastModified;
+			lastChecked = System.currentTimeMillis();
+			bodyHash = e.hash;
+		}
+	}
+	
+	/**
+	 * Puts another page in place of a child page, e.g. one of the right type. 
+	 * @param child - child page to replace
+	 * @param replacement - page to put in its place
+	 * @return true if the child was replaced, false if it is not a child of this page
+	 */
+	public synchronized final 
+	boolean replaceChild(AbstractPage child, AbstractPage replacement) {
+		int i = childPages.indexOf(child);
+		if (i < 0) return false;
+		childPages.set(i, replacement);
+		indexChildren();
+		return true;
+	}
+	
+	/**
+	 * Parses the page anew from its body kept in the archive, no network access is made.
+	 * Cached data of the page (HTTP validators, check time) is kept, parsed data replaces the rest.
+	 * Note: children pages are dropped, as with downloadPage().
+	 * @param archive - archive of page bodies
+	 * @return true if the page was parsed, false if it is not in the archive
+	 * @throws ProblemsReadingDocumentException if the archived body can't be read or parsed
+	 * @throws InterruptedException 
+	 */
+	public final 
+	boolean reparseFromArchive(PageArchive archive) throws ProblemsReadingDocumentException, InterruptedException {
+		byte[] body;
+		try {
+			body = archive.get(url.toString());
+		} catch (IOException e) {
+			throw new ProblemsReadingDocumentException(e);
+		}
+		if (body == null) return false;
+		loadFromCache(); // for validators, if page is cached
+		parseBody(body);
+		synchronized (this) {
+			bodyHash = BodyHash.of(body);
+		}
+		return true;
 	}
 
 	/**
@@ -409,6 +730,8 @@ public abstract class AbstractPage {
 	 * Downloads the page, parses it and updates this page with new data.
 	 * References to children pages are unreliable. Old pages may be discarded and replaced with
 	 * empty ones.
+	 * Request is conditional if this page has HTTP validators, the page is unmodified then 
+	 * if server says so.
 	 * 
 	 * @throws ProblemsReadingDocumentException if any error
 	 * @return true if any data was changed, false if this page is unmodified.
@@ -422,10 +745,12 @@ public abstract class AbstractPage {
 		} catch (Exception e) {
 			throw new ProblemsReadingDocumentException(e);
 		}
-		tempPage.downloadPage(reporter);
+		tempPage.copyValidators(this);
+		boolean downloaded = tempPage.downloadPage(reporter);
 		
 		synchronized (this) {
-			if (isSame(tempPage)) return false;
+			copyValidators(tempPage);
+			if (!downloaded || isSame(tempPage)) return false;
 			setTitle(tempPage.getTitle());
 			// somewhat awkward way to copy custom object data from temp object
 			readCacheSelf(tempPage.getSpecificDataXML()); 
@@ -446,25 +771,57 @@ public abstract class AbstractPage {
 	 * @param newChildren
 	 */
 	private void mergeNewChildren (Collection<AbstractPage> oldChildren, Collection<AbstractPage> newChildren) {
-		childPages.clear(); // discard previous data if any.
-		List<AbstractPage> resultChildren = new LinkedList<>();
+		List<AbstractPage> resultChildren = new ArrayList<>(newChildren.size());
+		
+		// old children by address, in their order (there can be several of one address)
+		Map<String, List<AbstractPage>> oldByKey = new HashMap<>(oldChildren.size() * 2);
+		for (AbstractPage current: oldChildren) 
+			if (current != null) {
+				List<AbstractPage> same = oldByKey.get(current.key);
+				if (same == null) {
+					same = new ArrayList<>(1);
+					oldByKey.put(current.key, same);
+				}
+				same.add(current);
+			}
 		
 		for (AbstractPage newChild: newChildren) {
 			// search if exactly that child existed.
 			AbstractPage oldChild = null;
-			for (AbstractPage current: oldChildren)
-				if (newChild.url.equals(current.url) &&
-					newChild.getClass().equals(current.getClass()) &&
-					((newChild.saveTo == null && current.saveTo==null) || newChild.saveTo.equals(current.saveTo))) { // last check is probably excessive
-					oldChild = current; break;
-				}
+			List<AbstractPage> same = oldByKey.get(newChild.key);
+			if (same != null)
+				for (AbstractPage current: same)
+					if (newChild.getClass().equals(current.getClass()) &&
+						Objects.equals(newChild.saveTo, current.saveTo)) { // last check is probably excessive
+						oldChild = current; break;
+					}
 			
 			if (oldChild != null) {
 				resultChildren.add(oldChild);
 			} else
 				resultChildren.add(newChild);
 		}
-		childPages.addAll(resultChildren); // at this point new children become published, as childPages is of unprotected access
+		setChildren(resultChildren); // at this point new children become published, as childPages is of unprotected access
+	}
+
+	/**
+	 * Replaces children with the given ones (previous data, if any, is discarded) and indexes them.
+	 * A page that never has children keeps none.
+	 * @param children
+	 */
+	private void setChildren (Collection<AbstractPage> children) {
+		if (childPages == NO_CHILDREN) return;
+		childPages.clear();
+		childPages.addAll(children);
+		indexChildren();
+	}
+
+	private void indexChildren () {
+		Map<String, AbstractPage> byKey = new HashMap<>(childPages.size() * 2);
+		for (AbstractPage child: childPages)
+			if (child != null && !byKey.containsKey(child.key))
+				byKey.put(child.key, child);
+		childrenByKey = byKey;
 	}
 	/**
 	 * Saves this page data into XML tree. 
@@ -485,6 +842,10 @@ public abstract class AbstractPage {
 		if (e==null) return; // element is corrupt and should not be cached 
 		e.setAttribute("title", getTitle());
 		e.setAttribute("url", url.toString());
+		if (eTag != null) e.setAttribute("etag", eTag);
+		if (lastModified != null) e.setAttribute("lastModified", lastModified);
+		if (lastChecked != 0) e.setAttribute("checked", String.valueOf(lastChecked));
+		if (bodyHash != null) e.setAttribute("hash", bodyHash);
 		for (AbstractPage child: childPages) 
 			if (child != null) {
 				Element childElement = new Element("childref");
@@ -492,7 +853,7 @@ public abstract class AbstractPage {
 				childElement.setAttribute("url",child.url.toString());
 				e.addContent(childElement);
 			}
-		getCache().addElementWithReplacement(e);
+		getCache().put(e);
 	}
 
 	/**
@@ -507,7 +868,7 @@ public abstract class AbstractPage {
 		if (getTitle()==null && ref.getTitle()!=null) return false;
 		
 		if (getTitle()!=null && !getTitle().equals(ref.getTitle())) return false;
-		if (! url.equals(ref.url)) return false;
+		if (! key.equals(ref.key)) return false;
 		Element x = ref.getSpecificDataXML();
 		String s1 = (x == null ? "": new XMLOutputter().outputString(x));
 		x = this.getSpecificDataXML();
@@ -518,7 +879,7 @@ public abstract class AbstractPage {
 		if (childPages.size()!=ref.childPages.size()) return false;
 		
 		for (AbstractPage child: childPages) 
-			if (ref.getChildByURL(child.url) == null) 
+			if (ref.getChildByKey(child.key) == null) 
 				return false;
 		return true;
 	}
@@ -529,68 +890,49 @@ public abstract class AbstractPage {
 	 * @return found page or null if not found 
 	 */
 	public final
-	AbstractPage getChildByURL (URL urlRequested) {
-		for (AbstractPage child: childPages) 
-			if (child.url.equals(urlRequested)) return child;
-		return null;
+	AbstractPage getChildByURL (URI urlRequested) {
+		return getChildByKey(urlRequested.toString());
+	}
+	
+	private
+	AbstractPage getChildByKey (String keyRequested) {
+		Map<String, AbstractPage> byKey = childrenByKey;
+		return (byKey == null)? null: byKey.get(keyRequested);
 	}
 	
 	/**
 	 * A page factory method. Tries 2 different approaches to create an AbstractPage object according to specifications.
 	 * First tries to create it by class name if provided. If fails, tries to guess appropriate class by parsing the url.
-	 * @param className - a desired class in "dloader.page" package. (can be null)
+	 * Page types and URL rules are those of PageTypes.
+	 * @param className - a desired class in "dloader.page" package, or page type name. (can be null)
 	 * @param baseURL - url of the new page. required
 	 * @param saveTo - saveTo path of the new page. can be null.
 	 * @return created page.
 	 * @throws IllegalArgumentException - is thrown when both approaches to create a page failed.
 	 */
-	@SuppressWarnings("unchecked")
 	public static
 	AbstractPage bakeAPage(String className, String baseURL, String saveTo, AbstractPage parent) throws IllegalArgumentException {
-		AbstractPage result = null;
-		String packageName = AbstractPage.class.getPackage().getName();
-		Class<? extends AbstractPage> cl = null;
-		Constructor<? extends AbstractPage> cons;
-		
 		baseURL = fixURLString(null, baseURL);
+		if (baseURL == null)
+			throw new IllegalArgumentException("no page url");
 		
-		try {
+		PageFactory factory = PageTypes.forName(className);
+		if (factory != null)
 			try {
-				cl = (Class<? extends AbstractPage>) Class.forName(className);
-			} catch (ClassNotFoundException e) {
-				className = packageName+ "." +className; // default package in case being omitted
-				cl = (Class<? extends AbstractPage>) Class.forName(className);
-			}
-			cons = cl.getConstructor(String.class, String.class, AbstractPage.class);
-			result = cons.newInstance(baseURL, saveTo, parent);
-		} catch (NoSuchMethodException | SecurityException | 
-					IllegalArgumentException | InvocationTargetException | 
-					ClassNotFoundException | InstantiationException | 
-					IllegalAccessException| NullPointerException e1) {
-				// generic creation failed. Going to try and parse URL.
-				URL u;
-				try {
-					u = new URL(baseURL);
-				} catch (MalformedURLException e2) {
-					throw new IllegalArgumentException(e2);
-				}
-				
-				if (baseURL.contains("/track/")) 
-					return new Track(baseURL.toString(), saveTo, null);
-				if (baseURL.contains("/album/")) 
-					return new Album(baseURL.toString(), saveTo, null);
-				if (u.getPath().isEmpty())
-					return new Discography(baseURL.toString(), saveTo, null);
-				
-				throw new IllegalArgumentException(e1);
+				return factory.create(baseURL, saveTo, parent);
+			} catch (IllegalArgumentException e) {
+				// can't be of that class, going to try and parse URL.
 			}
 		
-		return result;
+		factory = PageTypes.forURL(baseURL);
+		if (factory == null)
+			throw new IllegalArgumentException("can't tell page type of " + baseURL);
+		return factory.create(baseURL, saveTo, parent);
 	}
 
 	public AbstractPage getChildByURLString(String string) {
 		try {
-			return getChildByURL(resolveLink(string));
+			return getChildByURL(toURI(resolveLink(string)));
 		} catch (MalformedURLException e) {
 			return null;
 		}
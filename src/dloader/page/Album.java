@@ -25,6 +25,10 @@ import dloader.pagejob.ProgressReporter;
  */
 public class Album extends AbstractPage {
 
+	private static final String COVER_XPATH = "//pre:div[@id='tralbumArt']//pre:img";
+	private static final String SCRIPT_XPATH = "//pre:script";
+	private static final String TRACK_LINK_XPATH = "//pre:td//pre:div[@class='title']//pre:a";
+
 	/**
 	 * link to the album cover
 	 */
@@ -104,8 +108,23 @@ public class Album extends AbstractPage {
 	@Override
 	protected 
 	void parseSelf(Document doc) throws ProblemsReadingDocumentException {
+		parseSelf(queryXPathList(COVER_XPATH, doc), queryXPathList(SCRIPT_XPATH, doc));
+	}
+	
+	@Override
+	protected StreamingPathMatcher createMatcher() {
+		return new StreamingPathMatcher().add(COVER_XPATH, 1).add(SCRIPT_XPATH).add(TRACK_LINK_XPATH);
+	}
+	
+	@Override
+	protected
+	void parseSelf(StreamingPathMatcher matcher) throws ProblemsReadingDocumentException {
+		parseSelf(matcher.getMatches(COVER_XPATH), matcher.getMatches(SCRIPT_XPATH));
+	}
+	
+	private 
+	void parseSelf(List<Element> imgList, List<Element> scriptList) {
 		trackCounter = 0;
-		List<Element> imgList =  queryXPathList("//pre:div[@id='tralbumArt']//pre:img", doc);
 		if (imgList.size() > 0) {
 			try {
 				coverUrl = resolveLink((imgList.get(0)).getAttributeValue("src"));
@@ -114,7 +133,6 @@ public class Album extends AbstractPage {
 			}
 		}
 		
-		List<Element> scriptList = queryXPathList("//pre:script", doc);
 		for (int i = 0; i<scriptList.size(); i++) {
 			Pattern x = Pattern.compile(".*album_title : \"([^\"]*)\".*", Pattern.DOTALL);
 			Matcher m = x.matcher(scriptList.get(i).getText());
@@ -127,7 +145,7 @@ public class Album extends AbstractPage {
 
 	@Override
 	protected String getChildNodesXPath() {
-		return "//pre:td//pre:div[@class='title']//pre:a";
+		return TRACK_LINK_XPATH;
 	}
 
 	@Override
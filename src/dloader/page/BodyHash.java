@@ -0,0 +1,61 @@
+package dloader.page;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash of a downloaded page body, to tell an unchanged page without parsing it.
+ * Before hashing the body is normalized: HTML comments are dropped, as servers put 
+ * request-specific things there (render times, server ids and the like). 
+ * The body is treated as bytes, comment delimiters are ASCII in any encoding pages use.
+ */
+public class BodyHash {
+
+	private static final String ALGORITHM = "SHA-1";
+	private static final byte[] COMMENT_START = {'<', '!', '-', '-'};
+	private static final byte[] COMMENT_END = {'-', '-', '>'};
+
+	private BodyHash() {}
+
+	/**
+	 * @param body - page body as downloaded
+	 * @return hex string of the normalized body hash
+	 */
+	public static
+	String of(byte[] body) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
+		}
+		int from = 0;
+		int start;
+		while ((start = indexOf(body, COMMENT_START, from)) >= 0) {
+			digest.update(body, from, start - from);
+			int end = indexOf(body, COMMENT_END, start + COMMENT_START.length);
+			if (end < 0) {
+				from = body.length; // unclosed comment runs to the end
+				break;
+			}
+			from = end + COMMENT_END.length;
+		}
+		digest.update(body, from, body.length - from);
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b: digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	private static
+	int indexOf(byte[] data, byte[] what, int from) {
+		outer:
+		for (int i = from; i <= data.length - what.length; i++) {
+			for (int j = 0; j < what.length; j++)
+				if (data[i + j] != what[j]) continue outer;
+			return i;
+		}
+		return -1;
+	}
+}
@@ -63,6 +63,29 @@ public class Discography extends AbstractPage {
 		throw new ProblemsReadingDocumentException("Can't detect discography type");
 	}
 
+	@Override
+	protected StreamingPathMatcher createMatcher() {
+		return new StreamingPathMatcher().add(TITLE_XPATH, 1)
+				.add(SIDEBAR_DIV_XPATH, 0).add(INDEX_DIV_XPATH, 0)
+				.add(SIDEBAR_CHILD_LINK).add(INDEX_CHILD_REF);
+	}
+	
+	@Override
+	protected void parseSelf(StreamingPathMatcher matcher) throws ProblemsReadingDocumentException  {
+		List<Element> result = matcher.getMatches(TITLE_XPATH);
+		if (result.size() > 0)
+			setTitle(result.get(0).getText());
+		else
+			throw new ProblemsReadingDocumentException("Can't read discography title");
+		
+		if (matcher.getCount(SIDEBAR_DIV_XPATH) > 0)
+			variant = DiscographyListVariant.SIDEBAR;
+		else if (matcher.getCount(INDEX_DIV_XPATH) > 0)
+			variant = DiscographyListVariant.CENTRAL_INDEX;
+		else
+			throw new ProblemsReadingDocumentException("Can't detect discography type");
+	}
+
 	@Override
 	public 
 	boolean saveResult(ProgressReporter progressIndicator) throws IOException {
@@ -0,0 +1,78 @@
+package dloader.page;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaderSAX2Factory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * TagSoup HTML parsers, configured once per thread and reused for every page the thread parses,
+ * so neither the parser class lookup nor TagSoup schema tables are repeated per page.
+ * Parsers are not thread-safe, a thread-local one is never used by two threads.
+ * Note: TagSoup reports DOCTYPE only on first parse, later documents of a reused parser have none.
+ */
+public class HtmlParsers {
+
+	private static final String TAGSOUP_PARSER = "org.ccil.cowan.tagsoup.Parser";
+
+	/**
+	 * handler left in a reader between pages, so it does not hold on to the last one
+	 */
+	private static final ContentHandler NO_HANDLER = new DefaultHandler();
+
+	private static final ThreadLocal<SAXBuilder> builders = new ThreadLocal<SAXBuilder>() {
+		@Override
+		protected SAXBuilder initialValue() {
+			SAXBuilder builder = new SAXBuilder(new XMLReaderSAX2Factory(false, TAGSOUP_PARSER));
+			builder.setReuseParser(true);
+			return builder;
+		}
+	};
+
+	private static final ThreadLocal<XMLReader> readers = new ThreadLocal<XMLReader>() {
+		@Override
+		protected XMLReader initialValue() {
+			return new org.ccil.cowan.tagsoup.Parser();
+		}
+	};
+
+	private HtmlParsers() {}
+
+	/**
+	 * Builds JDOM document of HTML page.
+	 * @param in - page contents
+	 * @return the document, all elements are in XHTML namespace
+	 * @throws JDOMException
+	 * @throws IOException
+	 */
+	public static
+	Document build(InputStream in) throws JDOMException, IOException {
+		return builders.get().build(in);
+	}
+
+	/**
+	 * Parses HTML page into SAX events.
+	 * @param in - page contents
+	 * @param handler - receiver of the events
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public static
+	void parse(InputStream in, ContentHandler handler) throws IOException, SAXException {
+		XMLReader reader = readers.get();
+		reader.setContentHandler(handler);
+		try {
+			reader.parse(new InputSource(in));
+		} finally {
+			reader.setContentHandler(NO_HANDLER);
+		}
+	}
+}
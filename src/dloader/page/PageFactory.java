@@ -0,0 +1,16 @@
+package dloader.page;
+
+/**
+ * Creates pages of one type, see PageTypes.
+ */
+public interface PageFactory {
+
+	/**
+	 * @param url - web address of the page (required)
+	 * @param saveTo - where data of the page will be saved to, may be null
+	 * @param parent - parent page, may be null
+	 * @return new page
+	 * @throws IllegalArgumentException if the page can't be made of these
+	 */
+	AbstractPage create(String url, String saveTo, AbstractPage parent) throws IllegalArgumentException;
+}
@@ -0,0 +1,68 @@
+package dloader.page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tells page type by the head of its downloaded body, before the page is parsed:
+ * by Open Graph type (meta property="og:type") or by item type of embedded page data.
+ * An artist front page may show one of the albums (and be "album" then), 
+ * so an album is taken for a discography page too.
+ */
+public class PageTypeSniffer {
+
+	/**
+	 * bytes of the body looked at, page head is there
+	 */
+	public static final int SNIFF_BYTES = 16 * 1024;
+
+	private static final Pattern[] TYPE_PATTERNS = {
+		Pattern.compile("<meta[^>]+property\\s*=\\s*[\"']og:type[\"'][^>]*content\\s*=\\s*[\"']([\\w.]+)[\"']", 
+				Pattern.CASE_INSENSITIVE),
+		Pattern.compile("<meta[^>]+content\\s*=\\s*[\"']([\\w.]+)[\"'][^>]*property\\s*=\\s*[\"']og:type[\"']", 
+				Pattern.CASE_INSENSITIVE),
+		Pattern.compile("[\"']?item_type[\"']?\\s*:\\s*[\"'](\\w+)[\"']")};
+
+	private static final Map<String, Class<? extends AbstractPage>> types = new HashMap<>();
+
+	static {
+		types.put("song", Track.class);
+		types.put("track", Track.class);
+		types.put("t", Track.class);
+		types.put("album", Album.class);
+		types.put("a", Album.class);
+		types.put("band", Discography.class);
+		types.put("b", Discography.class);
+	}
+
+	private PageTypeSniffer() {}
+
+	/**
+	 * @param body - page body as downloaded
+	 * @return page class the body is of, null if it can't be told
+	 */
+	public static
+	Class<? extends AbstractPage> sniff(byte[] body) {
+		// only ASCII is looked for, any single byte charset will do
+		String head = new String(body, 0, Math.min(body.length, SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+		for (Pattern p: TYPE_PATTERNS) {
+			Matcher m = p.matcher(head);
+			if (m.find())
+				return types.get(m.group(1).toLowerCase());
+		}
+		return null;
+	}
+
+	/**
+	 * @param page - page the body was downloaded for
+	 * @param type - page class told by the body
+	 * @return true if the page can be parsed from the body
+	 */
+	public static
+	boolean accepts(AbstractPage page, Class<? extends AbstractPage> type) {
+		return type.isInstance(page) || (type == Album.class && page instanceof Discography);
+	}
+}
@@ -0,0 +1,165 @@
+package dloader.page;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of page types: factories by name (short class name, as in cache "childref" elements)
+ * and rules to guess page type by its URL.
+ * Page classes of this package are registered here, others can be registered by their users.
+ * A page class not registered, but having (String, String, AbstractPage) constructor,
+ * is found by reflection once and registered then. Names that are not page classes
+ * are not remembered, as they come from cache files and are not limited in number.
+ *
+ * This class is thread-safe.
+ */
+public class PageTypes {
+
+	private static
+	class UrlRule {
+		final Pattern pattern;
+		final PageFactory factory;
+
+		UrlRule(Pattern pattern, PageFactory factory) {
+			this.pattern = pattern;
+			this.factory = factory;
+		}
+	}
+
+	private static final String PACKAGE_PREFIX = AbstractPage.class.getPackage().getName() + ".";
+
+	private static final ConcurrentMap<String, PageFactory> factories = new ConcurrentHashMap<>();
+	private static final List<UrlRule> rules = new CopyOnWriteArrayList<>();
+
+	static {
+		register("Discography", new PageFactory() {
+			@Override
+			public AbstractPage create(String url, String saveTo, AbstractPage parent) {
+				return new Discography(url, saveTo, parent);
+			}
+		});
+		register("Album", new PageFactory() {
+			@Override
+			public AbstractPage create(String url, String saveTo, AbstractPage parent) {
+				return new Album(url, saveTo, parent);
+			}
+		});
+		register("Track", new PageFactory() {
+			@Override
+			public AbstractPage create(String url, String saveTo, AbstractPage parent) {
+				return new Track(url, saveTo, parent);
+			}
+		});
+		// first matching rule wins
+		addRule("/track/", "Track");
+		addRule("/album/", "Album");
+		addRule("^[^:/?#]+://[^/?#]*([?#].*)?$", "Discography"); // no path
+	}
+
+	private PageTypes() {}
+
+	/**
+	 * Registers page type, replacing one of the same name.
+	 * @param name - type name, short name of the page class
+	 * @param factory - factory of the type pages
+	 */
+	public static
+	void register(String name, PageFactory factory) {
+		factories.put(name, factory);
+	}
+
+	/**
+	 * Adds rule to guess page type by URL, after the rules added before.
+	 * @param regex - regular expression to be found in page URL (lowercase, without trailing "/")
+	 * @param name - type name, registered before
+	 * @throws IllegalArgumentException if no type of that name is registered
+	 */
+	public static
+	void addRule(String regex, String name) {
+		PageFactory factory = forName(name);
+		if (factory == null)
+			throw new IllegalArgumentException("unknown page type: " + name);
+		rules.add(new UrlRule(Pattern.compile(regex), factory));
+	}
+
+	/**
+	 * @param name - type name or (full) name of page class
+	 * @return factory of the type, null if there is no such type
+	 */
+	public static
+	PageFactory forName(String name) {
+		if (name == null) return null;
+		PageFactory factory = factories.get(name);
+		if (factory == null) {
+			if (name.startsWith(PACKAGE_PREFIX) && name.indexOf('.', PACKAGE_PREFIX.length()) < 0)
+				factory = factories.get(name.substring(PACKAGE_PREFIX.length()));
+			if (factory == null)
+				factory = reflect(name);
+			if (factory == null) return null;
+			PageFactory known = factories.putIfAbsent(name, factory);
+			if (known != null) factory = known;
+		}
+		return factory;
+	}
+
+	/**
+	 * @return number of names factories are known by
+	 */
+	static
+	int size() {
+		return factories.size();
+	}
+
+	/**
+	 * @param url - page URL, as fixed by AbstractPage.fixURLString()
+	 * @return factory of the first rule matching the URL, null if none matches
+	 */
+	public static
+	PageFactory forURL(String url) {
+		for (UrlRule rule: rules)
+			if (rule.pattern.matcher(url).find())
+				return rule.factory;
+		return null;
+	}
+
+	/**
+	 * Looks for page class of the name, in this package if the name is not a full one.
+	 * @return factory calling (String, String, AbstractPage) constructor of the class, null if there is no such class
+	 */
+	private static
+	PageFactory reflect(String name) {
+		Class<?> cl;
+		try {
+			try {
+				cl = Class.forName(name);
+			} catch (ClassNotFoundException e) {
+				cl = Class.forName(PACKAGE_PREFIX + name); // default package in case being omitted
+			}
+			if (!AbstractPage.class.isAssignableFrom(cl))
+				return null;
+			final Constructor<? extends AbstractPage> cons = 
+					cl.asSubclass(AbstractPage.class).getConstructor(String.class, String.class, AbstractPage.class);
+			return new PageFactory() {
+				@Override
+				public AbstractPage create(String url, String saveTo, AbstractPage parent) {
+					try {
+						return cons.newInstance(url, saveTo, parent);
+					} catch (InvocationTargetException e) {
+						if (e.getCause() instanceof IllegalArgumentException)
+							throw (IllegalArgumentException) e.getCause();
+						throw new IllegalArgumentException(e.getCause());
+					} catch (InstantiationException | IllegalAccessException e) {
+						throw new IllegalArgumentException(e);
+					}
+				}
+			};
+		} catch (ClassNotFoundException | NoSuchMethodException | SecurityException | LinkageError e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package dloader.page;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jdom2.Element;
+import org.jdom2.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Evaluates a few XPath queries over an HTML page as it is parsed, without building its document.
+ * Only elements matched by a query are built (with their subtrees), detached from any document.
+ * Queries are location paths of name steps with optional attribute equality predicate,
+ * e.g. "//pre:div[@id='discography']//pre:div[@class='trackTitle']/pre:a".
+ * Namespace prefixes are ignored, as page elements are all in one namespace.
+ *
+ * Not thread-safe, to be used for one page.
+ */
+public class StreamingPathMatcher extends DefaultHandler {
+
+	private static final Pattern STEP = Pattern.compile("(//?)(?:\\w+:)?([\\w*-]+)(?:\\[@([\\w-]+)='([^']*)'\\])?");
+
+	private static
+	class Step {
+		final boolean descendant; // "//" axis, "/" otherwise
+		final String name; // null for any
+		final String attribute, value; // null for no predicate
+
+		Step(boolean descendant, String name, String attribute, String value) {
+			this.descendant = descendant;
+			this.name = name;
+			this.attribute = attribute;
+			this.value = value;
+		}
+
+		boolean matches(String localName, Attributes attributes) {
+			if (name != null && !name.equals(localName)) return false;
+			return attribute == null || value.equals(attributes.getValue(attribute));
+		}
+	}
+
+	private static
+	class Query {
+		final Step[] steps;
+		/** number of matched elements to build, the rest are only counted */
+		final int limit;
+		final List<Element> matches = new ArrayList<>();
+		int count;
+
+		Query(Step[] steps, int limit) {
+			this.steps = steps;
+			this.limit = limit;
+		}
+	}
+
+	private final Map<String, Query> queries = new LinkedHashMap<>();
+	private Query[] queryArray;
+
+	/**
+	 * For each open element (and the document at the bottom) bit masks of steps, by query,
+	 * its children may match next.
+	 */
+	private final Deque<long[]> open = new ArrayDeque<>();
+
+	/**
+	 * deepest element being built, null when outside of matched elements
+	 */
+	private Element current;
+
+	/**
+	 * Adds a query, all its matches are built.
+	 * @param xpath - query
+	 * @return this
+	 * @throws IllegalArgumentException if the query is not a supported path
+	 */
+	public
+	StreamingPathMatcher add(String xpath) {
+		return add(xpath, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Adds a query, only the first matches are built.
+	 * @param xpath - query
+	 * @param limit - number of matches to build, 0 to only count them (see getCount())
+	 * @return this
+	 * @throws IllegalArgumentException if the query is not a supported path
+	 */
+	public
+	StreamingPathMatcher add(String xpath, int limit) {
+		if (xpath == null || queries.containsKey(xpath)) return this;
+		Matcher m = STEP.matcher(xpath);
+		List<Step> steps = new ArrayList<>();
+		int end = 0;
+		while (m.find() && m.start() == end) {
+			steps.add(new Step(m.group(1).length() == 2, m.group(2).equals("*")? null: m.group(2),
+					m.group(3), m.group(4)));
+			end = m.end();
+		}
+		if (steps.isEmpty() || end != xpath.length() || steps.size() > 63)
+			throw new IllegalArgumentException("unsupported XPath for streaming: " + xpath);
+		queries.put(xpath, new Query(steps.toArray(new Step[steps.size()]), limit));
+		return this;
+	}
+
+	/**
+	 * Parses HTML page with TagSoup, matching queries.
+	 * @param in - page contents
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public
+	void parse(InputStream in) throws IOException, SAXException {
+		HtmlParsers.parse(in, this);
+	}
+
+	/**
+	 * @param xpath - query added before parsing
+	 * @return elements matched, in document order, as many as the limit allows
+	 */
+	public
+	List<Element> getMatches(String xpath) {
+		Query q = queries.get(xpath);
+		return q == null? new ArrayList<Element>(0): q.matches;
+	}
+
+	/**
+	 * @param xpath - query added before parsing
+	 * @return number of elements matched, including those over the limit
+	 */
+	public
+	int getCount(String xpath) {
+		Query q = queries.get(xpath);
+		return q == null? 0: q.count;
+	}
+
+	@Override
+	public void startDocument() {
+		queryArray = queries.values().toArray(new Query[queries.size()]);
+		for (Query q: queryArray) {
+			q.matches.clear();
+			q.count = 0;
+		}
+		open.clear();
+		open.push(new long[queryArray.length]);
+		for (int i = 0; i < queryArray.length; i++)
+			open.peek()[i] = 1; // first step
+		current = null;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		long[] parent = open.peek();
+		long[] states = new long[queryArray.length];
+		Element built = null;
+		if (current != null)
+			built = addElement(localName, attributes);
+
+		for (int i = 0; i < queryArray.length; i++) {
+			Query q = queryArray[i];
+			long parentStates = parent[i];
+			boolean matched = false;
+			while (parentStates != 0) {
+				int k = Long.numberOfTrailingZeros(parentStates);
+				parentStates &= parentStates - 1;
+				Step step = q.steps[k];
+				if (step.descendant)
+					states[i] |= 1L << k; // can match deeper
+				if (!step.matches(localName, attributes)) continue;
+				if (k + 1 < q.steps.length) {
+					states[i] |= 1L << (k + 1);
+					continue;
+				}
+				// the whole path matched, maybe along several ways
+				if (matched) continue;
+				matched = true;
+				if (q.count++ < q.limit) {
+					if (built == null)
+						built = addElement(localName, attributes);
+					q.matches.add(built);
+				}
+			}
+		}
+		open.push(states);
+	}
+
+	/**
+	 * Builds the element, under the one being built if any, and makes it current.
+	 */
+	private Element addElement(String localName, Attributes attributes) {
+		Element e = new Element(localName);
+		for (int i = 0; i < attributes.getLength(); i++)
+			try {
+				e.setAttribute(attributes.getLocalName(i), attributes.getValue(i));
+			} catch (IllegalArgumentException ex) {
+				// name or value JDOM can't hold, the page is HTML after all
+			}
+		if (current != null)
+			current.addContent(e);
+		current = e;
+		return e;
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		open.pop();
+		if (current != null)
+			current = current.getParentElement();
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) {
+		if (current != null)
+			current.addContent(new Text(new String(ch, start, length)));
+	}
+}
@@ -7,8 +7,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -38,57 +36,68 @@ public class Track extends AbstractPage {
 	private static final String SCRIPT_DESC_XPATH = "//pre:div[@id='pgBd']/pre:script";
 
 	/**
-	 * Set of custom properties read from page, saved to cache and 
+	 * Custom properties read from page, saved to cache and 
 	 * resulting audio file metadata tags. Before iterating through properties,
 	 * they might be required to be updated with "title" field from getTitle().
+	 * Known properties are kept in fields (a Track is one of many thousands pages in memory),
+	 * any other ones in a map created on first use. 
+	 * Guarded by this.
 	 */	
-	private Properties properties; // thread-safe class
+	private String mediaLink, artist, track, album, title, comment;
+	private Map<String, String> otherProperties;
 	
 	/**
 	 * Shortcut	
 	 */
-	public 
-	String getProperty(String name) { return properties.getProperty(name); }
+	public synchronized 
+	String getProperty(String name) {
+		switch (name) {
+		case "mediaLink": return mediaLink;
+		case "artist": return artist;
+		case "track": return track;
+		case "album": return album;
+		case "title": return title;
+		case "comment": return comment;
+		default: return (otherProperties == null)? null: otherProperties.get(name);
+		}
+	}
 	
 	/**
 	 * Use null value to delete property. Empty string ("") value cannot replace non-empty value.
+	 * Artist and album names are interned, as all tracks of an album have the same ones.
 	 */
-	public 
+	public synchronized 
 	String setProperty(String name, String value) {
 		String oldValue = getProperty(name);
-		if (value == null)
-			return (String) properties.remove(name);
-		else if (oldValue == null)
-			return (String) properties.setProperty(name, value);
-		else if (value.isEmpty() && !oldValue.isEmpty())
+		if (value != null && value.isEmpty() && oldValue != null && !oldValue.isEmpty())
 			return null;
-		else return (String) properties.setProperty(name, value);
-		
+		switch (name) {
+		case "mediaLink": mediaLink = value; break;
+		case "artist": artist = (value == null)? null: value.intern(); break;
+		case "track": track = value; break;
+		case "album": album = (value == null)? null: value.intern(); break;
+		case "title": title = value; break;
+		case "comment": comment = value; break;
+		default:
+			if (value == null) {
+				if (otherProperties != null)
+					otherProperties.remove(name);
+			} else {
+				if (otherProperties == null)
+					otherProperties = new HashMap<>(4);
+				otherProperties.put(name, value);
+			}
+		}
+		return oldValue;
 	}
 	
-	/**
-	 * Maps property name to compiled Pattern to Track info from downloaded page
-	 */ 
-	private static final Map<String, Pattern> dataPatterns = new HashMap<String,Pattern>();
-	
 	/** XMLCacheDataKeys are names of Track properties that are used by readXMLSelf() and getSpecificDataXML().<br/>
 	 *  "title" is not included because it is processed in AbstactPage separately  
 	 */
 	private static final String[] XMLCacheDataKeys = {"mediaLink", "artist", "track", "album"};
 
-	static {
-		dataPatterns.put("mediaLink", Pattern.compile(".*trackinfo:.*\"file\":\"([^\"]*)\".*", Pattern.DOTALL));
-		dataPatterns.put("artist", Pattern.compile(".*artist\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
-		dataPatterns.put("album", Pattern.compile(".*album_title\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
-		dataPatterns.put("title", Pattern.compile(".*title\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
-// XXX: track number is set by parent album or not set at all - may be this behavior should be changed  		
-//		dataPatterns.put("track", Pattern.compile(".*numtracks\\s*:\\s*([\\d]*).*", Pattern.DOTALL));
-		dataPatterns.put("comment", Pattern.compile(".*trackinfo:.*\"has_info\":\"([^\"]*)\".*", Pattern.DOTALL));				
-	}
-	
 	public Track(String url, String saveTo, AbstractPage parent) throws IllegalArgumentException {
-		super(url, saveTo, parent);
-		properties = new Properties(); // created AFTER construction since getTitle() and setTitle() are not used in AbstractPage constructor
+		super(url, saveTo, parent, true);
 	}
 	
 	@Override
@@ -106,7 +115,7 @@ public class Track extends AbstractPage {
 		
 		String statusReport = null; // defaults to "skipped"
 		
-		// tagging does not require synchronization as it is operating with Properties object which is thread-safe. 
+		// tagging does not require synchronization as properties are read and written under this page's lock. 
 		//XXX: this is not strictly true, but as properties are read much later than written in different PageJobs, we may assume those operations do not overlap. 
 		if (tagAudioFile(Main.forceTagging))
 			statusReport = "file updated";
@@ -278,16 +287,9 @@ public class Track extends AbstractPage {
 			throws ProblemsReadingDocumentException {
 		List<Element> scriptList = queryXPathList(SCRIPT_DESC_XPATH, doc);
 		for (Element el: scriptList) {
-			String rawData = el.getText();
-			// clear JavaScript escaping: "\/" --> "/", etc.
-			rawData = rawData.replaceAll("\\\\(.)", "$1");
-			
-			// try to recover each property by its pattern
-			for (Map.Entry<String, Pattern> entry: dataPatterns.entrySet()) {
-				Matcher m = entry.getValue().matcher(rawData);
-				if (m.matches()) 
-					setProperty(entry.getKey(), m.group(1));
-			}
+			// script data objects are read in one pass, patterns are only the fallback
+			for (Map.Entry<String, String> entry: TralbumDataExtractor.extract(el.getText()).entrySet())
+				setProperty(entry.getKey(), entry.getValue());
 			setTitle(getProperty("title"));
 		
 		}
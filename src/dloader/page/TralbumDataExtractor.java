@@ -0,0 +1,360 @@
+package dloader.page;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads Track properties from the inline script of a track page, where they are set
+ * as JavaScript object literals ("var TralbumData = {...}", "var EmbedData = {...}").
+ * The script is read once: each object assigned in it is tokenized as (relaxed) JSON,
+ * values that are not literals are skipped.
+ * If the objects have no track info, properties they lack are looked for 
+ * by regular expressions over the whole script, as it was done before.
+ * Properties: mediaLink, artist, album, title, comment.
+ * As with the expressions, a property set by several objects takes the last value.
+ */
+public class TralbumDataExtractor {
+
+	/**
+	 * names of Track properties read from a script
+	 */
+	public static final List<String> KEYS = Collections.unmodifiableList(
+			Arrays.asList("mediaLink", "artist", "album", "title", "comment"));
+
+	/**
+	 * Maps property name to compiled Pattern to Track info from downloaded page
+	 */
+	private static final Map<String, Pattern> dataPatterns = new HashMap<String,Pattern>();
+
+	static {
+		dataPatterns.put("mediaLink", Pattern.compile(".*trackinfo:.*\"file\":\"([^\"]*)\".*", Pattern.DOTALL));
+		dataPatterns.put("artist", Pattern.compile(".*artist\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
+		dataPatterns.put("album", Pattern.compile(".*album_title\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
+		dataPatterns.put("title", Pattern.compile(".*title\\s*:\\s*\"([^\"]*)\".*", Pattern.DOTALL));
+// XXX: track number is set by parent album or not set at all - may be this behavior should be changed
+//		dataPatterns.put("track", Pattern.compile(".*numtracks\\s*:\\s*([\\d]*).*", Pattern.DOTALL));
+		dataPatterns.put("comment", Pattern.compile(".*trackinfo:.*\"has_info\":\"([^\"]*)\".*", Pattern.DOTALL));
+	}
+
+	/**
+	 * stands for literals other than strings and null (numbers, booleans, expressions)
+	 */
+	private static final Object OTHER = new Object();
+
+	private final String text;
+	private int pos;
+
+	/**
+	 * property to value, null value for a property found to be null
+	 */
+	private final Map<String, String> result = new HashMap<>();
+
+	private TralbumDataExtractor(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * Reads properties by the tokenizer. If it finds no track info (the script is not 
+	 * what it is expected to be), properties not found are looked for by patterns.
+	 * @param script - text of the page script
+	 * @return property to its value, properties not found or null are not included
+	 */
+	public static
+	Map<String, String> extract(String script) {
+		Map<String, String> data = parse(script);
+		if (!data.containsKey("mediaLink")) {
+			List<String> missing = new ArrayList<>(KEYS);
+			missing.removeAll(data.keySet());
+			data.putAll(match(script, missing));
+		}
+		data.values().removeAll(Collections.singleton(null));
+		return data;
+	}
+
+	/**
+	 * Reads properties from object literals assigned in the script.
+	 * @param script - text of the page script
+	 * @return property to its value, null value for a property present but null
+	 */
+	public static
+	Map<String, String> parse(String script) {
+		TralbumDataExtractor extractor = new TralbumDataExtractor(script);
+		extractor.scan();
+		return extractor.result;
+	}
+
+	/**
+	 * Looks for properties with regular expressions, after JavaScript escaping is cleared.
+	 * Each pattern scans the whole script.
+	 * @param script - text of the page script
+	 * @param keys - properties to look for
+	 * @return property to its value, properties not matched are not included
+	 */
+	public static
+	Map<String, String> match(String script, Collection<String> keys) {
+		Map<String, String> data = new HashMap<>();
+		// clear JavaScript escaping: "\/" --> "/", etc.
+		String rawData = script.replaceAll("\\\\(.)", "$1");
+		for (String key: keys) {
+			Pattern p = dataPatterns.get(key);
+			if (p == null) continue;
+			Matcher m = p.matcher(rawData);
+			if (m.matches())
+				data.put(key, m.group(1));
+		}
+		return data;
+	}
+
+	/**
+	 * Finds objects assigned in the text ("= {") and reads them;
+	 * a failed read resumes the search right after its opening brace.
+	 */
+	private void scan() {
+		int from = 0;
+		while ((from = text.indexOf('{', from)) >= 0) {
+			if (isAssigned(from))
+				try {
+					pos = from;
+					Object value = readValue();
+					if (value instanceof Map)
+						take((Map<?, ?>) value);
+					from = pos;
+					continue;
+				} catch (ParseException e) {
+					// not a literal, e.g. "= function() {"
+				}
+			from++;
+		}
+	}
+
+	private boolean isAssigned(int brace) {
+		int i = brace - 1;
+		while (i >= 0 && Character.isWhitespace(text.charAt(i)))
+			i--;
+		return i >= 0 && text.charAt(i) == '=';
+	}
+
+	/**
+	 * Takes properties from an object assigned in the script.
+	 */
+	private void take(Map<?, ?> object) {
+		take("title", object, "title");
+		take("artist", object, "artist");
+		take("album", object, "album_title");
+		Object trackInfo = object.get("trackinfo");
+		if (trackInfo instanceof List && !((List<?>) trackInfo).isEmpty()
+				&& ((List<?>) trackInfo).get(0) instanceof Map) {
+			Map<?, ?> track = (Map<?, ?>) ((List<?>) trackInfo).get(0);
+			Object file = track.get("file");
+			if (file instanceof Map) { // file per encoding
+				Map<?, ?> files = (Map<?, ?>) file;
+				file = files.get("mp3-128");
+				if (file == null && !files.isEmpty())
+					file = files.values().iterator().next();
+			}
+			take("mediaLink", file, track.containsKey("file"));
+			take("comment", track, "has_info");
+		}
+	}
+
+	private void take(String property, Map<?, ?> object, String key) {
+		take(property, object.get(key), object.containsKey(key));
+	}
+
+	/**
+	 * Later string values replace earlier ones, null only marks the property as found.
+	 */
+	private void take(String property, Object value, boolean present) {
+		if (value instanceof String)
+			result.put(property, (String) value);
+		else if (present && value == null && !result.containsKey(property))
+			result.put(property, null);
+	}
+
+	/**
+	 * Reads a value at the current position and moves past it.
+	 * @return Map for object, List for array, String, null or OTHER
+	 */
+	private Object readValue() throws ParseException {
+		skipSpace();
+		if (pos >= text.length())
+			throw new ParseException("value expected", pos);
+		char c = text.charAt(pos);
+		switch (c) {
+		case '{': return readObject();
+		case '[': return readArray();
+		case '"':
+		case '\'': return readString();
+		}
+		int start = pos;
+		skipExpression();
+		int end = pos;
+		while (Character.isWhitespace(text.charAt(end - 1)))
+			end--;
+		return (end - start == 4 && text.startsWith("null", start))? null: OTHER;
+	}
+
+	private Map<String, Object> readObject() throws ParseException {
+		Map<String, Object> object = new LinkedHashMap<>();
+		pos++; // {
+		while (true) {
+			skipSpace();
+			if (pos >= text.length())
+				throw new ParseException("unclosed object", pos);
+			if (text.charAt(pos) == '}') {
+				pos++;
+				return object;
+			}
+			String key = readKey();
+			skipSpace();
+			if (pos >= text.length() || text.charAt(pos) != ':')
+				throw new ParseException("':' expected", pos);
+			pos++;
+			object.put(key, readValue());
+			skipSpace();
+			if (pos < text.length() && text.charAt(pos) == ',')
+				pos++;
+			else if (pos >= text.length() || text.charAt(pos) != '}')
+				throw new ParseException("',' or '}' expected", pos);
+		}
+	}
+
+	private List<Object> readArray() throws ParseException {
+		List<Object> array = new ArrayList<>();
+		pos++; // [
+		while (true) {
+			skipSpace();
+			if (pos >= text.length())
+				throw new ParseException("unclosed array", pos);
+			if (text.charAt(pos) == ']') {
+				pos++;
+				return array;
+			}
+			array.add(readValue());
+			skipSpace();
+			if (pos < text.length() && text.charAt(pos) == ',')
+				pos++;
+			else if (pos >= text.length() || text.charAt(pos) != ']')
+				throw new ParseException("',' or ']' expected", pos);
+		}
+	}
+
+	private String readKey() throws ParseException {
+		char c = text.charAt(pos);
+		if (c == '"' || c == '\'')
+			return readString();
+		int start = pos;
+		while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos))
+				|| text.charAt(pos) == '_' || text.charAt(pos) == '$'))
+			pos++;
+		if (start == pos)
+			throw new ParseException("key expected", pos);
+		return text.substring(start, pos);
+	}
+
+	/**
+	 * Reads a quoted string, clearing JavaScript escaping.
+	 */
+	private String readString() throws ParseException {
+		char quote = text.charAt(pos++);
+		StringBuilder s = null; // only built if there are escapes
+		int start = pos;
+		while (pos < text.length()) {
+			char c = text.charAt(pos);
+			if (c == quote) {
+				String value = (s == null)? text.substring(start, pos): s.toString();
+				pos++;
+				return value;
+			}
+			if (c == '\n')
+				break;
+			if (c != '\\') {
+				if (s != null) s.append(c);
+				pos++;
+				continue;
+			}
+			if (s == null)
+				s = new StringBuilder(text.substring(start, pos));
+			if (++pos >= text.length()) break;
+			c = text.charAt(pos++);
+			switch (c) {
+			case 'n': s.append('\n'); break;
+			case 't': s.append('\t'); break;
+			case 'r': s.append('\r'); break;
+			case 'b': s.append('\b'); break;
+			case 'f': s.append('\f'); break;
+			case 'u':
+				if (pos + 4 > text.length())
+					throw new ParseException("bad escape", pos);
+				try {
+					s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw new ParseException("bad escape", pos);
+				}
+				pos += 4;
+				break;
+			default: s.append(c); // \" \\ \/ and the like
+			}
+		}
+		throw new ParseException("unclosed string", start);
+	}
+
+	/**
+	 * Moves to the end of a non-literal value: the next ',', '}' or ']' outside of brackets and strings.
+	 */
+	private void skipExpression() throws ParseException {
+		int depth = 0;
+		while (pos < text.length()) {
+			char c = text.charAt(pos);
+			switch (c) {
+			case '"':
+			case '\'':
+				readString();
+				continue;
+			case '(': case '[': case '{':
+				depth++;
+				break;
+			case ')': case ']': case '}':
+				if (depth == 0) return;
+				depth--;
+				break;
+			case ',':
+				if (depth == 0) return;
+				break;
+			case ';': // end of statement, not a value
+				if (depth == 0) throw new ParseException("unexpected ';'", pos);
+				break;
+			}
+			pos++;
+		}
+		throw new ParseException("unexpected end of script", pos);
+	}
+
+	/**
+	 * Skips whitespace and comments.
+	 */
+	private void skipSpace() {
+		while (pos < text.length()) {
+			char c = text.charAt(pos);
+			if (Character.isWhitespace(c))
+				pos++;
+			else if (text.startsWith("//", pos)) {
+				int eol = text.indexOf('\n', pos);
+				pos = (eol < 0)? text.length(): eol + 1;
+			} else if (text.startsWith("/*", pos)) {
+				int end = text.indexOf("*/", pos + 2);
+				pos = (end < 0)? text.length(): end + 2;
+			} else
+				return;
+		}
+	}
+}
@@ -50,11 +50,13 @@ public abstract class JobMaster {
 	 * CHECKSAVINGREQUIREMENT - compare AbstractPage objects with files on disk to establish whether saving is required,
 	 * 		as saving/downloading is a time consuming operation. 
 	 * SAVEDATA - download missing/corrupt files.
+	 * REPARSEARCHIVE - parse pages anew from page archive (Main.archive) into cache, no network access;
+	 * 		pages not archived are read from cache.
 	 * 
 	 * It is vital that different kinds of jobs are not ran on the same page concurrently.
 	 * @author Acerbic
 	 */
-	public enum JobType { READCACHEPAGES, UPDATEPAGES, SAVEDATA, CHECKSAVINGREQUIREMENT};
+	public enum JobType { READCACHEPAGES, UPDATEPAGES, SAVEDATA, CHECKSAVINGREQUIREMENT, REPARSEARCHIVE};
 
 	/**
 	 *  Those a temporary variable to store rootPage and JobType between calls to the constructor and actual jobs execution 
@@ -97,6 +99,7 @@ public abstract class JobMaster {
 				case UPDATEPAGES: submit(new UpdatePageJob(rootPage, this, !Main.allowFromCache)); break;
 				case SAVEDATA: submit(new SaveDataJob(rootPage, this)); break;
 				case CHECKSAVINGREQUIREMENT: submit(new CheckSavingJob(rootPage, this, true)); break;
+				case REPARSEARCHIVE: submit(new ReparseArchiveJob(rootPage, this, Main.archive)); break;
 				}
 			} catch (InterruptedException e) {
 				// JobMaster's thread is interrupted before any tasks are submitted. just exit
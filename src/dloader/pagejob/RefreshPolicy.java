@@ -0,0 +1,78 @@
+package dloader.pagejob;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import dloader.page.AbstractPage;
+import dloader.page.Album;
+import dloader.page.Discography;
+import dloader.page.Track;
+
+/**
+ * Decides whether a cached page is fresh enough to skip asking the server about it.
+ * Each page class has its own maximum age since the page was last checked, 
+ * zero (the default) means the page is always checked.
+ * 
+ * This class is thread-safe.
+ */
+public class RefreshPolicy {
+
+	/**
+	 * max age in ms by page class, guarded by this
+	 */
+	private final Map<Class<? extends AbstractPage>, Long> maxAges = new HashMap<>();
+
+	/**
+	 * @param pageClass - class of pages
+	 * @param maxAge - time since last check when a page is still fresh, 0 to always check
+	 * @param unit - unit of maxAge
+	 */
+	public synchronized
+	void setMaxAge(Class<? extends AbstractPage> pageClass, long maxAge, TimeUnit unit) {
+		if (maxAge < 0) 
+			throw new IllegalArgumentException();
+		maxAges.put(pageClass, unit.toMillis(maxAge));
+	}
+
+	/**
+	 * @param pageClass - class of pages
+	 * @return max age of pages in ms, 0 if not set
+	 */
+	public synchronized
+	long getMaxAge(Class<? extends AbstractPage> pageClass) {
+		Long maxAge = maxAges.get(pageClass);
+		return maxAge == null? 0: maxAge;
+	}
+
+	/**
+	 * @param page - page loaded from cache
+	 * @return true if the page was checked recently enough not to be checked again
+	 */
+	public
+	boolean isFresh(AbstractPage page) {
+		long maxAge = getMaxAge(page.getClass());
+		long checked = page.getLastChecked();
+		return maxAge > 0 && checked > 0 && System.currentTimeMillis() - checked < maxAge;
+	}
+
+	/**
+	 * Reads max ages in hours from string "H" (for all pages) or "D,A,T" 
+	 * (for Discography, Album and Track pages).
+	 * @param spec - max ages
+	 * @return new policy
+	 * @throws IllegalArgumentException if spec can't be parsed
+	 */
+	public static
+	RefreshPolicy parse(String spec) throws IllegalArgumentException {
+		String[] hours = spec.split(",");
+		if (hours.length != 1 && hours.length != 3)
+			throw new IllegalArgumentException(spec);
+		RefreshPolicy result = new RefreshPolicy();
+		// NumberFormatException is an IllegalArgumentException too
+		result.setMaxAge(Discography.class, Long.parseLong(hours[0].trim()), TimeUnit.HOURS);
+		result.setMaxAge(Album.class, Long.parseLong(hours[hours.length/2].trim()), TimeUnit.HOURS);
+		result.setMaxAge(Track.class, Long.parseLong(hours[hours.length-1].trim()), TimeUnit.HOURS);
+		return result;
+	}
+}
@@ -0,0 +1,52 @@
+package dloader.pagejob;
+
+import dloader.cache.PageArchive;
+import dloader.page.AbstractPage;
+import dloader.page.AbstractPage.ProblemsReadingDocumentException;
+
+/**
+ * Job to parse a page anew from the page archive and save the result to cache, without network access.
+ * A page not in the archive is read from cache, so its children can still be reached.
+ * Starts the same jobs for children nodes.
+ */
+public class ReparseArchiveJob extends PageJob {
+
+	private final PageArchive archive;
+
+	public ReparseArchiveJob(AbstractPage page, JobMaster owner, PageArchive archive) {
+		super(page, owner);
+		this.archive = archive;
+	}
+
+	/**
+	 * summary of the messages reported by ReparseArchiveJob:
+	 * "reparse started", 1
+	 * "reparsed", 1
+	 * "not archived, read from cache", 1
+	 * "reparse failed", 1
+	 */
+	@Override
+	public void run() {
+		try {
+			report("reparse started", 1);
+			try {
+				if (page.reparseFromArchive(archive)) {
+					page.saveToCache();
+					report("reparsed", 1);
+				} else if (page.loadFromCache())
+					report("not archived, read from cache", 1);
+				else {
+					report("reparse failed", 1);
+					return;
+				}
+			} catch (ProblemsReadingDocumentException e) {
+				report("reparse failed", 1);
+				return;
+			}
+			//note: this iterator does not require locking because of CopyOnWriteArrayList implementation
+			for (AbstractPage child: page.childPages)
+				jobMaster.submit(new ReparseArchiveJob(child, jobMaster, archive));
+		} catch (InterruptedException e) {
+		}
+	}
+}
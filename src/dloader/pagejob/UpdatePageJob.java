@@ -1,7 +1,13 @@
 package dloader.pagejob;
 
+import java.util.logging.Level;
+
+import dloader.Main;
 import dloader.page.AbstractPage;
+import dloader.page.AbstractPage.PageTypeMismatchException;
 import dloader.page.AbstractPage.ProblemsReadingDocumentException;
+import dloader.page.PageFactory;
+import dloader.page.PageTypes;
 
 /**
  * Job to download a page from network. Firstly, reads from cache and then updates with network data.
@@ -11,6 +17,7 @@ import dloader.page.AbstractPage.ProblemsReadingDocumentException;
  * If new page data is different, all children will be submitted to the same test.
  * forceDownload flag in constructor makes job to always download, skipping whole cache checks, 
  * for this page and all generated jobs.
+ * Pages that are fresh by Main.refreshPolicy are not checked with the network at all.
  * @author Acerbic
  */
 public class UpdatePageJob extends PageJob {
@@ -36,6 +43,8 @@ public class UpdatePageJob extends PageJob {
 	 * "download finished", 1
 	 * "up to date", 1
 	 * "download failed", 1
+	 * "page type corrected", 1 (on the page put in place of this one, see replacePage())
+	 * "page type mismatch", 1 (root page of another type, followed by "download failed")
 	 * 
 	 * also it will call to CheckSavingJob and more messages will be reported from there  
 	 */
@@ -43,12 +52,14 @@ public class UpdatePageJob extends PageJob {
 	public void run() {
 		try {
 			report ("download job started", 1);
+			boolean fresh = false;
 			if (!forceDownload) 
-				if (page.loadFromCache())
+				if (page.loadFromCache()) {
 					report("read from cache", 1);
-				else 
+					fresh = Main.refreshPolicy.isFresh(page);
+				} else 
 					report("cache reading failed", 1);
-				if (page.updateFromNet(this) || forceDownload) {
+				if (!fresh && (page.updateFromNet(this) || forceDownload)) {
 					page.saveToCache();
 					report("download finished", 1);
 					
@@ -56,6 +67,8 @@ public class UpdatePageJob extends PageJob {
 					for (AbstractPage child: page.childPages) 
 						jobMaster.submit(new UpdatePageJob(child, jobMaster, forceDownload));
 				} else {
+					if (!fresh)
+						page.saveToCache(); // to remember when it was checked
 					report("up to date", 1);
 					// even if all children are "up to date" too, still need to run the jobs - for the grand-children and etc.
 					// since cache checks are cheap, better err on a cautious side.
@@ -67,6 +80,12 @@ public class UpdatePageJob extends PageJob {
 				//saving pre-check for faster visual;
 				CheckSavingJob checkJob = new CheckSavingJob(page, jobMaster, false);
 				checkJob.run();
+		} catch (PageTypeMismatchException e) {
+			try {
+				if (!replacePage(e))
+					report("download failed", 1);
+			} catch (InterruptedException e1) {
+			}
 		} catch (ProblemsReadingDocumentException e) {
 			report("download failed", 1);
 			
@@ -76,4 +95,42 @@ public class UpdatePageJob extends PageJob {
 			
 	}
 
+	/**
+	 * Puts a page of the type the downloaded document is of in place of this job's page,
+	 * parsed from that document (so it is not downloaded again), and goes on with its children.
+	 * Root page can't be replaced, as it is held by the caller of the jobs: 
+	 * the mismatch is reported and the type detected is logged instead.
+	 * @param e - mismatch the download failed with
+	 * @return true if the page was replaced
+	 * @throws InterruptedException
+	 */
+	private boolean replacePage(PageTypeMismatchException e) throws InterruptedException {
+		AbstractPage parent = page.getParent();
+		PageFactory factory = PageTypes.forName(e.detectedType.getSimpleName());
+		if (parent == null) {
+			Main.log(Level.WARNING, e.getMessage()); // names the type detected
+			report("page type mismatch", 1);
+			return false;
+		}
+		if (factory == null) 
+			return false;
+		AbstractPage replacement = factory.create(page.url.toString(), page.saveTo, parent);
+		try {
+			replacement.parseFrom(e);
+		} catch (ProblemsReadingDocumentException e1) {
+			return false;
+		}
+		if (!parent.replaceChild(page, replacement)) 
+			return false;
+		replacement.saveToCache();
+		parent.saveToCache(); // child reference of the right class
+		jobMaster.report(replacement, "page type corrected", 1);
+		jobMaster.report(replacement, "download finished", 1);
+		
+		//note: this iterator does not require locking because of CopyOnWriteArrayList implementation
+		for (AbstractPage child: replacement.childPages) 
+			jobMaster.submit(new UpdatePageJob(child, jobMaster, forceDownload));
+		new CheckSavingJob(replacement, jobMaster, false).run();
+		return true;
+	}
 }
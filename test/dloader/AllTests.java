@@ -3,11 +3,20 @@ package dloader;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import dloader.cache.*;
 import dloader.page.*;
+import dloader.pagejob.*;
 
 @RunWith(Suite.class)
 @SuiteClasses({ AbstractPageTest.class, TrackTest.class, DiscographyTest.class, 
-	JobMasterTest.class, XMLCacheTest.class, WebDownloaderTest.class })
+	JobMasterTest.class, XMLCacheTest.class, WebDownloaderTest.class,
+	BinaryCacheFileTest.class, CacheStoreTest.class, CacheCollectorTest.class,
+	RefreshPolicyTest.class, IndexedCacheStoreTest.class, ChangeTrackingCacheStoreTest.class,
+	ShardedCacheStoreTest.class, XPathCacheTest.class,
+	TralbumDataExtractorTest.class, StreamingPathMatcherTest.class,
+	HtmlParsersTest.class, BodyHashTest.class,
+	PageArchiveTest.class,
+	PageTypesTest.class, PageTypeSnifferTest.class })
 public class AllTests {
 
 }
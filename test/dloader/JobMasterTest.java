@@ -4,8 +4,7 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -55,7 +54,7 @@ public class JobMasterTest {
 				String href = element.getAttributeValue("href");
 				
 				AbstractPage c;
-				String newURL = Paths.get(url.toURI()).resolveSibling(href.substring(1)).toUri().toString();
+				String newURL = Paths.get(url).resolveSibling(href.substring(1)).toUri().toString();
 				if (href.equals("/emancipator-children/elephant-survival.htm"))
 					c = new Track(newURL, getChildrenSaveTo(), this);
 				else 
@@ -63,7 +62,7 @@ public class JobMasterTest {
 				c.setTitle(element.getText());
 				return c;
 			} catch (NullPointerException|IllegalArgumentException|
-					IOException | URISyntaxException e) {
+					IOException e) {
 				throw new ProblemsReadingDocumentException(e);
 			}
 		}
@@ -118,7 +117,7 @@ public class JobMasterTest {
 		assertTrue(results.contains("http://emancipator.bandcamp.com/album/free-downloadsread cache failed1"));
 		
 		assertEquals(5, p.childPages.size());
-		assertEquals("http://f0.bcbits.com/z/17/92/1792496746-1.jpg", ((Album) p.getChildByURL(new URL("http://emancipator.bandcamp.com/album/remixes-2"))).getCoverUrl().toString());
+		assertEquals("http://f0.bcbits.com/z/17/92/1792496746-1.jpg", ((Album) p.getChildByURL(URI.create("http://emancipator.bandcamp.com/album/remixes-2"))).getCoverUrl().toString());
 	}
 	
 	@Test
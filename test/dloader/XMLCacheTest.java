@@ -7,10 +7,21 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.jdom2.*;
+import org.jdom2.output.XMLOutputter;
 import org.junit.*;
 
+import dloader.cache.CacheFiles;
+import dloader.cache.CacheJournal;
+
 /**
  * @author A.Cerbic
  */
@@ -40,6 +51,11 @@ public class XMLCacheTest {
 			if (!f.delete())
 				throw new IOException("Can't delete cache file after testing\n");
 		f = null;
+		Path journalFile = CacheJournal.journalFor(Paths.get(tmpFilename));
+		Files.deleteIfExists(journalFile);
+		Files.deleteIfExists(journalFile.resolveSibling(journalFile.getFileName() + ".1"));
+		Files.deleteIfExists(Paths.get(tmpFilename + ".damaged"));
+		Files.deleteIfExists(Paths.get(tmpFilename + CacheFiles.COMPRESSED_EXTENSION));
 	}
 
 	/**
@@ -99,4 +115,253 @@ public class XMLCacheTest {
 		assertNotNull(t);
 		assertEquals("Discography",t.getElementForPage("http://homestuck.bandcamp.com").getName());
 	}
+
+	@Test
+	public void testIndexLookupMatchesXPathLookup() throws InterruptedException {
+		XMLCache t = new XMLCache("test/pages_scan_cache.xml");
+		for (String url: new String[] {"http://homestuck.bandcamp.com", 
+				"http://homestuck.bandcamp.com/album/alterniabound", 
+				"http://homestuck.bandcamp.com/track/black-rose-green-sun",
+				"http://homestuck-x.bandcamp.com"}) {
+			Element byIndex = t.getElementForPage(url);
+			Element byXPath = t.getElementForPageByXPath(url);
+			if (byXPath == null) 
+				assertNull(byIndex);
+			else 
+				assertEquals(new XMLOutputter().outputString(byXPath), new XMLOutputter().outputString(byIndex));
+		}
+	}
+
+	@Test
+	public void testAddElementWithReplacementUpdatesIndex() throws InterruptedException {
+		XMLCache t = new XMLCache(tmpFilename);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		a1.setAttribute("title", "first");
+		t.addElementWithReplacement(a1);
+		Element a2 = new Element("TEST");
+		a2.setAttribute("url", "someurl");
+		a2.setAttribute("title", "second");
+		t.addElementWithReplacement(a2);
+		assertEquals("second", t.getElementForPage("someurl").getAttributeValue("title"));
+		assertEquals("second", t.getElementForPageByXPath("someurl").getAttributeValue("title"));
+		
+		a2.setAttribute("title", "modified after adding");
+		assertEquals("second", t.getElementForPage("someurl").getAttributeValue("title"));
+	}
+
+	@Test
+	public void testReadersShareElementUntilReplaced() {
+		XMLCache t = new XMLCache(tmpFilename);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		a1.setAttribute("title", "first");
+		t.addElementWithReplacement(a1);
+		Element read = t.getElementForPage("someurl");
+		assertSame(read, t.getElementForPage("someurl"));
+		
+		a1.setAttribute("title", "second");
+		t.addElementWithReplacement(a1);
+		assertEquals("first", read.getAttributeValue("title")); // a reader keeps the version it got
+		assertEquals("second", t.getElementForPage("someurl").getAttributeValue("title"));
+	}
+
+	@Test
+	public void testJournalIsReplayedWithoutSaving() throws IOException {
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		a1.setAttribute("title", "line\nbreak");
+		t1.addElementWithReplacement(a1);
+		t1.close();
+		assertFalse(new File(tmpFilename).exists());
+		
+		XMLCache t2 = new XMLCache(tmpFilename, true);
+		assertEquals("line\nbreak", t2.getElementForPage("someurl").getAttributeValue("title"));
+		t2.close();
+		assertNull(new XMLCache(tmpFilename).getElementForPage("someurl"));
+	}
+
+	@Test
+	public void testSaveCacheTruncatesJournal() throws IOException {
+		Path journalFile = CacheJournal.journalFor(Paths.get(tmpFilename));
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		t1.addElementWithReplacement(a1);
+		assertTrue(Files.exists(journalFile));
+		t1.saveCache();
+		assertFalse(Files.exists(journalFile));
+		t1.close();
+		XMLCache t2 = new XMLCache(tmpFilename, true);
+		assertNotNull(t2.getElementForPage("someurl"));
+		t2.close();
+	}
+
+	@Test
+	public void testRootPagesAreSavedFirst() throws Exception {
+		XMLCache t1 = new XMLCache(tmpFilename);
+		Element root = new Element("Discography");
+		root.setAttribute("url", "http://z.bandcamp.com");
+		Element childref = new Element("childref");
+		childref.setAttribute("url", "http://a.bandcamp.com/album/a");
+		root.addContent(childref);
+		Element album = new Element("Album");
+		album.setAttribute("url", "http://a.bandcamp.com/album/a");
+		t1.addElementWithReplacement(album);
+		t1.addElementWithReplacement(root);
+		t1.saveCache();
+		t1.close();
+
+		Element saved = new org.jdom2.input.SAXBuilder().build(new File(tmpFilename)).getRootElement();
+		assertEquals("http://z.bandcamp.com", saved.getChildren().get(0).getAttributeValue("url"));
+		assertEquals("http://a.bandcamp.com/album/a", saved.getChildren().get(1).getAttributeValue("url"));
+	}
+
+	@Test
+	public void testTornJournalEntryIsSkipped() throws IOException {
+		Path journalFile = CacheJournal.journalFor(Paths.get(tmpFilename));
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		t1.addElementWithReplacement(a1);
+		t1.close();
+		Files.write(journalFile, "<TEST url=\"otherurl".getBytes(Charset.forName("UTF-8")), StandardOpenOption.APPEND);
+		
+		XMLCache t2 = new XMLCache(tmpFilename, true);
+		assertNotNull(t2.getElementForPage("someurl"));
+		assertNull(t2.getElementForPage("otherurl"));
+		t2.close();
+	}
+
+	@Test
+	public void testEntryAppendedAfterTornEntryIsReplayed() throws IOException {
+		Path journalFile = CacheJournal.journalFor(Paths.get(tmpFilename));
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		t1.addElementWithReplacement(a1);
+		t1.close();
+		Files.write(journalFile, "<TEST url=\"otherurl".getBytes(Charset.forName("UTF-8")), StandardOpenOption.APPEND);
+		
+		XMLCache t2 = new XMLCache(tmpFilename, true);
+		Element a3 = new Element("TEST");
+		a3.setAttribute("url", "thirdurl");
+		t2.addElementWithReplacement(a3);
+		t2.close();
+		
+		XMLCache t3 = new XMLCache(tmpFilename, true);
+		assertNotNull(t3.getElementForPage("someurl"));
+		assertNull(t3.getElementForPage("otherurl"));
+		assertNotNull(t3.getElementForPage("thirdurl"));
+		t3.close();
+	}
+
+	@Test
+	public void testJournalOfUnfinishedSaveIsReplayed() throws IOException {
+		Path journalFile = CacheJournal.journalFor(Paths.get(tmpFilename));
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		t1.addElementWithReplacement(a1);
+		t1.close();
+		new CacheJournal(journalFile).rotate(); // as if the save was killed right after starting
+		assertFalse(Files.exists(journalFile));
+		
+		XMLCache t2 = new XMLCache(tmpFilename, true);
+		Element a2 = new Element("TEST");
+		a2.setAttribute("url", "otherurl");
+		t2.addElementWithReplacement(a2);
+		t2.close();
+		XMLCache t3 = new XMLCache(tmpFilename, true);
+		assertNotNull(t3.getElementForPage("someurl"));
+		assertNotNull(t3.getElementForPage("otherurl"));
+		t3.close();
+	}
+
+	@Test
+	public void testRemovalIsJournaledAndSaved() throws IOException {
+		XMLCache t1 = new XMLCache(tmpFilename, true);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		t1.addElementWithReplacement(a1);
+		a1.setAttribute("url", "otherurl");
+		t1.addElementWithReplacement(a1);
+		t1.saveCache();
+		t1.remove("someurl");
+		assertNull(t1.getElementForPage("someurl"));
+		t1.close();
+		
+		XMLCache t2 = new XMLCache(tmpFilename, true); // file has the page, journal drops it
+		assertNull(t2.getElementForPage("someurl"));
+		assertEquals(Arrays.asList("otherurl"), new ArrayList<>(t2.urls()));
+		t2.saveCache();
+		t2.close();
+		XMLCache t3 = new XMLCache(tmpFilename);
+		assertNull(t3.getElementForPage("someurl"));
+		assertNotNull(t3.getElementForPage("otherurl"));
+	}
+
+	@Test
+	public void testCompressedCacheFileRoundTrip() throws IOException, InterruptedException {
+		String gzFilename = tmpFilename + CacheFiles.COMPRESSED_EXTENSION;
+		XMLCache t1 = new XMLCache(gzFilename);
+		for (String url: new String[] {"url2", "url1", "url3"}) {
+			Element a = new Element("TEST");
+			a.setAttribute("url", url);
+			a.addContent(new Element("child").setText("line 1\nline 2"));
+			t1.addElementWithReplacement(a);
+		}
+		t1.saveCache();
+		byte[] header = Arrays.copyOf(Files.readAllBytes(Paths.get(gzFilename)), 2);
+		assertArrayEquals(new byte[] {0x1f, (byte) 0x8b}, header); // gzip magic
+		
+		XMLCache t2 = new XMLCache(gzFilename);
+		t2.awaitLoaded();
+		assertEquals(3, t2.urls().size());
+		assertEquals("line 1\nline 2", t2.getElementForPage("url2").getChildText("child"));
+	}
+
+	@Test
+	public void testDamagedCacheFileIsSetAside() throws IOException, InterruptedException {
+		Files.write(Paths.get(tmpFilename), "<root><TEST url=\"someurl\"/><TEST url=".getBytes(Charset.forName("UTF-8")));
+		XMLCache t = new XMLCache(tmpFilename);
+		t.awaitLoaded();
+		assertNotNull(t.getElementForPage("someurl"));
+		assertTrue(Files.exists(Paths.get(tmpFilename + ".damaged")));
+	}
+
+	@Test
+	public void testBlockingLookupWaitsForPageBeingLoaded() throws IOException, InterruptedException {
+		XMLCache t1 = new XMLCache(tmpFilename);
+		for (int i = 0; i < 5000; i++) {
+			Element a = new Element("TEST");
+			a.setAttribute("url", "url" + i);
+			t1.addElementWithReplacement(a);
+		}
+		t1.saveCache();
+		
+		XMLCache t2 = new XMLCache(tmpFilename);
+		assertNotNull(t2.getElementForPage("url4999"));
+		assertNull(t2.getElementForPage("no such url"));
+		assertTrue(t2.isLoaded());
+	}
+
+	@Test
+	public void testPagePutWhileLoadingIsNotOverridden() throws IOException, InterruptedException {
+		XMLCache t1 = new XMLCache(tmpFilename);
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		a1.setAttribute("title", "from file");
+		t1.addElementWithReplacement(a1);
+		t1.saveCache();
+		
+		XMLCache t2 = new XMLCache(tmpFilename);
+		t2.setLoadPolicy(XMLCache.LoadPolicy.FALL_THROUGH);
+		a1.setAttribute("title", "fresh");
+		t2.addElementWithReplacement(a1);
+		t2.awaitLoaded();
+		assertEquals("fresh", t2.getElementForPage("someurl").getAttributeValue("title"));
+		assertEquals("fresh", t2.getElementForPageByXPath("someurl").getAttributeValue("title"));
+	}
 }
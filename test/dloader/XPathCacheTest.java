@@ -0,0 +1,48 @@
+package dloader;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.xpath.XPathExpression;
+import org.junit.Test;
+
+public class XPathCacheTest {
+
+	@Test
+	public void testExpressionIsCompiledOncePerThread() throws InterruptedException {
+		final String query = "//pre:div[@id='tralbumArt']";
+		final Namespace ns = Namespace.getNamespace("pre", "http://www.w3.org/1999/xhtml");
+		XPathExpression<Element> xpe = XPathCache.get(query, ns);
+		assertSame(xpe, XPathCache.get(query, ns));
+		assertNotSame(xpe, XPathCache.get(query, Namespace.getNamespace("pre", "urn:other")));
+
+		final AtomicReference<XPathExpression<Element>> other = new AtomicReference<>();
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				other.set(XPathCache.get(query, ns));
+			}
+		};
+		t.start();
+		t.join();
+		assertNotNull(other.get());
+		assertNotSame(xpe, other.get());
+	}
+
+	@Test
+	public void testVariablesAreBoundPerEvaluation() {
+		Element root = new Element("root");
+		root.addContent(new Element("Track").setAttribute("url", "it's"));
+		root.addContent(new Element("Album").setAttribute("url", "other"));
+		new Document(root);
+		XPathExpression<Element> xpe = XPathCache.get("/root/*[@url=$url]", null, "url");
+		xpe.setVariable("url", "it's");
+		assertEquals("Track", xpe.evaluateFirst(root).getName());
+		xpe.setVariable("url", "other");
+		assertEquals("Album", xpe.evaluateFirst(root).getName());
+	}
+}
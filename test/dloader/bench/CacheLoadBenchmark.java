@@ -0,0 +1,93 @@
+package dloader.bench;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+
+import dloader.XMLCache;
+import dloader.cache.BinaryCacheFile;
+import dloader.cache.CacheFiles;
+
+/**
+ * Measures cache file size against time to save it and to load it back,
+ * for plain XML, gzipped XML and binary cache files.
+ * Pages are copies of test/pages_scan_cache.xml made for as many artists as given.
+ * <pre>java -cp ... dloader.bench.CacheLoadBenchmark [&lt;artists&gt; [&lt;rounds&gt;]]</pre>
+ */
+public class CacheLoadBenchmark {
+
+	private static final String SNAPSHOT = "test/pages_scan_cache.xml";
+	private static final String SNAPSHOT_HOST = "homestuck.bandcamp.com";
+
+	public static void main(String[] args) throws Exception {
+		int artists = args.length > 0? Integer.parseInt(args[0]): 50;
+		int rounds = args.length > 1? Integer.parseInt(args[1]): 5;
+
+		List<Element> pages = makePages(artists);
+		Path directory = Files.createTempDirectory("cache_bench");
+		System.out.printf("%d pages (%d artists), best of %d rounds%n", pages.size(), artists, rounds);
+		System.out.printf("%-12s %12s %10s %10s%n", "format", "bytes", "save ms", "load ms");
+		try {
+			for (String extension: new String[] {".xml", ".xml" + CacheFiles.COMPRESSED_EXTENSION,
+					BinaryCacheFile.FILE_EXTENSION})
+				run(directory.resolve("cache" + extension), pages, rounds);
+		} finally {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file: files)
+					Files.delete(file);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	private static void run(Path file, List<Element> pages, int rounds) throws IOException, InterruptedException {
+		long bestSave = Long.MAX_VALUE, bestLoad = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			Files.deleteIfExists(file);
+			XMLCache cache = new XMLCache(file.toString());
+			for (Element e: pages)
+				cache.put(e);
+			long start = System.nanoTime();
+			cache.saveCache();
+			bestSave = Math.min(bestSave, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			cache = new XMLCache(file.toString());
+			cache.awaitLoaded();
+			if (cache.urls().size() != pages.size())
+				throw new IllegalStateException("pages lost in " + file);
+			bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+		}
+		String name = file.getFileName().toString();
+		System.out.printf("%-12s %12d %10d %10d%n", name.substring(name.indexOf('.')), Files.size(file),
+				bestSave / 1000000, bestLoad / 1000000);
+	}
+
+	private static List<Element> makePages(int artists) throws InterruptedException {
+		XMLCache snapshot = new XMLCache(SNAPSHOT);
+		snapshot.awaitLoaded();
+		Map<String, Element> result = new LinkedHashMap<>(); // pages of other hosts are not copied
+		for (int i = 0; i < artists; i++)
+			for (String url: snapshot.urls()) {
+				Element e = snapshot.get(url).clone();
+				rehost(e, "artist" + i + ".bandcamp.com");
+				result.put(e.getAttributeValue("url"), e);
+			}
+		return new ArrayList<>(result.values());
+	}
+
+	private static void rehost(Element e, String host) {
+		for (Attribute a: e.getAttributes())
+			a.setValue(a.getValue().replace(SNAPSHOT_HOST, host));
+		for (Element child: e.getChildren())
+			rehost(child, host);
+	}
+}
@@ -0,0 +1,86 @@
+package dloader.bench;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Element;
+
+import dloader.Main;
+import dloader.cache.MemoryCacheStore;
+import dloader.page.AbstractPage;
+import dloader.page.Discography;
+
+/**
+ * Measures cost of page identity in child lists: merging children of a discography 
+ * with thousands of tracks read from cache again, and looking every child up by its address.
+ * Optionally the lookups are repeated for a few children with URL.equals(), as pages were 
+ * compared before, which resolves host names (beware, that needs a name resolver and may stall).
+ * <pre>java -cp ... dloader.bench.PageIdentityBenchmark [&lt;tracks&gt; [&lt;rounds&gt; [&lt;URL lookups&gt;]]]</pre>
+ */
+public class PageIdentityBenchmark {
+
+	private static final String HOST = "http://artist.bandcamp.com";
+
+	private static volatile Object sink; // keeps results from being optimized away
+
+	public static void main(String[] args) throws Exception {
+		int tracks = args.length > 0? Integer.parseInt(args[0]): 5000;
+		int rounds = args.length > 1? Integer.parseInt(args[1]): 5;
+		int urlLookups = args.length > 2? Integer.parseInt(args[2]): 0;
+
+		Main.cache = new MemoryCacheStore();
+		Element e = new Element("Discography");
+		e.setAttribute("url", HOST);
+		e.setAttribute("title", "Artist");
+		for (int i = 0; i < tracks; i++) {
+			Element childElement = new Element("childref");
+			childElement.setAttribute("class", "Track");
+			childElement.setAttribute("url", HOST + "/track/track-" + i);
+			e.addContent(childElement);
+		}
+		Main.cache.put(e);
+
+		AbstractPage page = new Discography(HOST, System.getProperty("java.io.tmpdir"), null);
+		if (!page.loadFromCache() || page.childPages.size() != tracks)
+			throw new IllegalStateException("discography not read from cache");
+		List<URI> addresses = new ArrayList<>();
+		for (AbstractPage child: page.childPages)
+			addresses.add(child.url);
+
+		long bestMerge = Long.MAX_VALUE, bestLookup = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			page.loadFromCache(); // merges new children with the old ones
+			bestMerge = Math.min(bestMerge, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (URI u: addresses)
+				sink = page.getChildByURL(u);
+			bestLookup = Math.min(bestLookup, System.nanoTime() - start);
+		}
+		System.out.printf("%d tracks, best of %d rounds%n", tracks, rounds);
+		System.out.printf("merge from cache: %8d ms%n", bestMerge / 1000000);
+		System.out.printf("lookup of all:    %8d ms (%d ns per lookup)%n", 
+				bestLookup / 1000000, bestLookup / tracks);
+
+		if (urlLookups > 0) {
+			List<URL> urls = new ArrayList<>();
+			for (URI u: addresses)
+				urls.add(u.toURL());
+			long start = System.nanoTime();
+			for (int i = 0; i < urlLookups; i++) {
+				URL requested = urls.get(urls.size() - 1 - i % urls.size()); // from the end, as the worst case 
+				for (URL u: urls)
+					if (u.equals(requested)) {
+						sink = u;
+						break;
+					}
+			}
+			long time = System.nanoTime() - start;
+			System.out.printf("URL.equals lookup: %7d ms for %d (%d ns per lookup)%n", 
+					time / 1000000, urlLookups, time / urlLookups);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package dloader.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdom2.Element;
+
+import dloader.Main;
+import dloader.cache.MemoryCacheStore;
+import dloader.page.AbstractPage;
+import dloader.page.Discography;
+
+/**
+ * Measures heap taken by a page tree read from cache: artists with albums with tracks,
+ * as many pages as given (100 000 by default). Tree is read the way a run reads it,
+ * every page from its cache entry, then the cache is dropped and only the tree is left.
+ * Heap is measured as used memory after a few garbage collections, run with enough -Xmx.
+ * <pre>java -cp ... dloader.bench.PageTreeFootprintBenchmark [&lt;pages&gt;]</pre>
+ */
+public class PageTreeFootprintBenchmark {
+
+	private static final int ALBUMS = 9, TRACKS = 10; // per artist and per album
+	private static final int PAGES_PER_ARTIST = 1 + ALBUMS + ALBUMS * TRACKS;
+
+	public static void main(String[] args) throws Exception {
+		int pages = args.length > 0? Integer.parseInt(args[0]): 100000;
+		int artists = Math.max(1, pages / PAGES_PER_ARTIST);
+		String saveTo = System.getProperty("java.io.tmpdir");
+
+		Main.cache = new MemoryCacheStore(); // warm-up, so loaded classes are not counted
+		putArtist(0);
+		load(new Discography(artistURL(0), saveTo, null));
+		Main.cache = new MemoryCacheStore();
+
+		long before = usedHeap();
+		for (int a = 0; a < artists; a++)
+			putArtist(a);
+		List<AbstractPage> tree = new ArrayList<>(artists);
+		int count = 0;
+		for (int a = 0; a < artists; a++) {
+			AbstractPage artist = new Discography(artistURL(a), saveTo, null);
+			count += load(artist);
+			tree.add(artist);
+		}
+		Main.cache = new MemoryCacheStore();
+		long after = usedHeap();
+
+		if (count != artists * PAGES_PER_ARTIST)
+			throw new IllegalStateException("pages not read from cache: " + count);
+		System.out.printf("%d pages (%d artists, %d albums, %d tracks)%n", count,
+				artists, artists * ALBUMS, artists * ALBUMS * TRACKS);
+		System.out.printf("page tree: %8d KB (%d bytes per page)%n",
+				(after - before) / 1024, (after - before) / count);
+		if (tree.size() != artists) throw new AssertionError(); // keeps the tree reachable until measured
+	}
+
+	private static int load(AbstractPage page) {
+		if (!page.loadFromCache())
+			throw new IllegalStateException(page.url + " not read from cache");
+		int count = 1;
+		for (AbstractPage child: page.childPages)
+			count += load(child);
+		return count;
+	}
+
+	private static String artistURL(int a) {
+		return "http://artist" + a + ".bandcamp.com";
+	}
+
+	/**
+	 * Puts cache entries of an artist, values are built anew for each entry as parsing does.
+	 */
+	private static void putArtist(int a) {
+		String host = artistURL(a);
+		Element artist = page("Discography", host, "Artist " + a);
+		for (int b = 0; b < ALBUMS; b++) {
+			String albumURL = host + "/album/album-" + b;
+			artist.addContent(childref("Album", albumURL));
+			Element album = page("Album", albumURL, "Album " + b);
+			album.setAttribute("coverUrl", "http://f0.bcbits.com/img/a" + a + "_" + b + "_10.jpg");
+			album.setAttribute("moreInfo", "released March 1, 2012");
+			for (int t = 0; t < TRACKS; t++) {
+				String trackURL = host + "/track/track-" + b + "-" + t;
+				album.addContent(childref("Track", trackURL));
+				Element track = page("Track", trackURL, "Track " + b + "-" + t);
+				track.setAttribute("mediaLink", "http://popplers5.bandcamp.com/download/track?enc=mp3-128&id="
+						+ (a * 1000 + b * 100 + t) + "&stream=1");
+				track.setAttribute("artist", new String("Artist " + a));
+				track.setAttribute("track", String.valueOf(t + 1));
+				track.setAttribute("album", new String("Album " + b));
+				Main.cache.put(track);
+			}
+			Main.cache.put(album);
+		}
+		Main.cache.put(artist);
+	}
+
+	private static Element page(String name, String url, String title) {
+		Element e = new Element(name);
+		e.setAttribute("url", url);
+		e.setAttribute("title", title);
+		e.setAttribute("hash", String.format("%040x", url.hashCode() & 0xffffffffL));
+		return e;
+	}
+
+	private static Element childref(String className, String url) {
+		Element e = new Element("childref");
+		e.setAttribute("class", className);
+		e.setAttribute("url", url);
+		return e;
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(100);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+}
@@ -0,0 +1,56 @@
+package dloader.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dloader.page.TralbumDataExtractor;
+import dloader.page.TralbumDataExtractorTest;
+
+/**
+ * Compares reading Track properties from page scripts by the tokenizer 
+ * and by the patterns alone, on scripts with page data of saved pages.
+ * <pre>java -cp ... dloader.bench.TralbumDataBenchmark [&lt;iterations&gt;] [&lt;page file&gt;...]</pre>
+ */
+public class TralbumDataBenchmark {
+
+	private static final String[] FIXTURES = {
+		"test/emancipator-children/elephant-survival.htm",
+		"test/emancipator-children/free-downloads.htm",
+		"test/emancipator-children/remixes-2.htm",
+		"test/emancipator-children/soon-it-will-be-cold-enough.htm",
+		"test/Homestuck.htm"};
+
+	private static volatile Object sink; // keeps results from being optimized away
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0? Integer.parseInt(args[0]): 200;
+		String[] files = args.length > 1? Arrays.copyOfRange(args, 1, args.length): FIXTURES;
+
+		List<String> scripts = new ArrayList<>();
+		long chars = 0;
+		for (String file: files)
+			for (String script: TralbumDataExtractorTest.readPageScripts(file)) {
+				scripts.add(script);
+				chars += script.length();
+			}
+		System.out.printf("%d scripts, %d chars, %d iterations%n", scripts.size(), chars, iterations);
+
+		for (int round = 0; round < 3; round++) { // first rounds warm up
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				for (String script: scripts)
+					sink = TralbumDataExtractor.match(script, TralbumDataExtractor.KEYS);
+			long patterns = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+				for (String script: scripts)
+					sink = TralbumDataExtractor.extract(script);
+			long extractor = System.nanoTime() - start;
+
+			System.out.printf("round %d: patterns %d us/script, extractor %d us/script%n", round, 
+					patterns / 1000 / iterations / scripts.size(), extractor / 1000 / iterations / scripts.size());
+		}
+	}
+}
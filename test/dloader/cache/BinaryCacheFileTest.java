@@ -0,0 +1,108 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dloader.XMLCache;
+
+public class BinaryCacheFileTest {
+
+	Path xmlSnapshot = Paths.get("test/pages_scan_cache.xml");
+	Path binFile = Paths.get("test_cache" + BinaryCacheFile.FILE_EXTENSION);
+	Path xmlFile = Paths.get("test_cache.xml");
+
+	@Before
+	public void setUp() throws Exception {
+		Files.deleteIfExists(binFile);
+		Files.deleteIfExists(xmlFile);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(binFile);
+		Files.deleteIfExists(xmlFile);
+	}
+
+	@Test
+	public void testLookupMatchesXMLCache() throws IOException {
+		int count = BinaryCacheFile.convertFromXML(xmlSnapshot, binFile);
+		XMLCache xmlCache = new XMLCache(xmlSnapshot.toString());
+		BinaryCacheFile bin = BinaryCacheFile.open(binFile);
+		assertEquals(count, bin.size());
+		
+		XMLOutputter outputter = new XMLOutputter();
+		for (Element e: bin.getAll()) {
+			String url = e.getAttributeValue("url");
+			assertEquals(outputter.outputString(xmlCache.getElementForPage(url)), 
+					outputter.outputString(bin.get(url)));
+		}
+		assertEquals("Discography", bin.get("http://homestuck.bandcamp.com").getName());
+		assertNull(bin.get("http://homestuck-x.bandcamp.com"));
+	}
+
+	@Test
+	public void testRoundTripToXML() throws IOException {
+		int count = BinaryCacheFile.convertFromXML(xmlSnapshot, binFile);
+		assertEquals(count, BinaryCacheFile.convertToXML(binFile, xmlFile));
+		Element e = new XMLCache(xmlFile.toString()).getElementForPage("http://homestuck.bandcamp.com/album/alterniabound");
+		assertEquals("AlterniaBound", e.getAttributeValue("title"));
+	}
+
+	@Test
+	public void testXMLCacheInBinaryFormat() throws IOException {
+		BinaryCacheFile.convertFromXML(xmlSnapshot, binFile);
+		XMLCache t1 = new XMLCache(binFile.toString());
+		Element a1 = new Element("TEST");
+		a1.setAttribute("url", "someurl");
+		a1.addContent(new Element("childref").setAttribute("url", "http://homestuck.bandcamp.com"));
+		t1.addElementWithReplacement(a1);
+		assertNotNull(t1.getElementForPage("someurl"));
+		t1.saveCache();
+		assertNotNull(t1.getElementForPage("someurl"));
+
+		XMLCache t2 = new XMLCache(binFile.toString());
+		List<Element> children = t2.getElementForPage("someurl").getChildren("childref");
+		assertEquals(1, children.size());
+		assertEquals("http://homestuck.bandcamp.com", children.get(0).getAttributeValue("url"));
+		assertEquals("Homestuck", t2.getElementForPage("http://homestuck.bandcamp.com").getAttributeValue("title"));
+	}
+
+	@Test
+	public void testTruncatedFileIsRejectedAtOpen() throws IOException {
+		BinaryCacheFile.convertFromXML(xmlSnapshot, binFile);
+		byte[] bytes = Files.readAllBytes(binFile);
+		Files.write(binFile, Arrays.copyOf(bytes, bytes.length - 100));
+		try {
+			BinaryCacheFile.open(binFile);
+			fail("truncated file opened");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFileCanBeReplacedWhileCopyIsOpen() throws IOException {
+		BinaryCacheFile.convertFromXML(xmlSnapshot, binFile);
+		BinaryCacheFile old = BinaryCacheFile.openCopy(binFile);
+		Element page = new Element("TEST").setAttribute("url", "someurl");
+		BinaryCacheFile.write(binFile, Collections.singletonList(page));
+
+		assertEquals("Homestuck", old.get("http://homestuck.bandcamp.com").getAttributeValue("title"));
+		BinaryCacheFile replaced = BinaryCacheFile.openCopy(binFile);
+		assertEquals(1, replaced.size());
+		assertNotNull(replaced.get("someurl"));
+	}
+}
@@ -0,0 +1,99 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.jdom2.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheCollectorTest {
+
+	private MemoryCacheStore store;
+
+	private static Element page(String url, String... children) {
+		Element e = new Element("TEST");
+		e.setAttribute("url", url);
+		for (String child: children) {
+			Element childRef = new Element("childref");
+			childRef.setAttribute("url", child);
+			e.addContent(childRef);
+		}
+		return e;
+	}
+
+	@Before
+	public void setUp() {
+		store = new MemoryCacheStore();
+		store.put(page("root", "album1", "album2", "not cached"));
+		store.put(page("album1", "track1", "track2"));
+		store.put(page("album2", "track2", "album1")); // shared and circular references
+		store.put(page("track1"));
+		store.put(page("track2"));
+		store.put(page("old album", "old track", "track1"));
+		store.put(page("old track"));
+	}
+
+	@Test
+	public void testFindReachable() {
+		assertEquals(new HashSet<>(Arrays.asList("root", "album1", "album2", "not cached", "track1", "track2")), 
+				new CacheCollector(store).findReachable(Arrays.asList("root")));
+	}
+
+	@Test
+	public void testCollectDropsUnreachable() {
+		assertEquals(new HashSet<>(Arrays.asList("old album", "old track")), 
+				new HashSet<>(new CacheCollector(store).collect(Arrays.asList("root"))));
+		assertEquals(5, store.size());
+		assertNull(store.get("old album"));
+		assertNotNull(store.get("track1"));
+	}
+
+	@Test
+	public void testRootIsFoundAsTyped() {
+		store.put(page("http://homestuck.bandcamp.com", "http://homestuck.bandcamp.com/album/medium"));
+		store.put(page("http://homestuck.bandcamp.com/album/medium"));
+		for (String root: new String[] {"http://homestuck.bandcamp.com/", "http://Homestuck.bandcamp.com"}) {
+			CacheCollector collector = new CacheCollector(store);
+			assertEquals(Arrays.asList("http://homestuck.bandcamp.com"), collector.cacheKeysOf(Arrays.asList(root)));
+			assertFalse(collector.findUnreachable(Arrays.asList(root, "root"))
+					.contains("http://homestuck.bandcamp.com/album/medium"));
+		}
+	}
+
+	@Test
+	public void testNothingIsDroppedWithoutCachedRoot() {
+		try {
+			new CacheCollector(store).collect(Arrays.asList("http://other.bandcamp.com"));
+			fail("pages dropped for a root that is not cached");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(7, store.size());
+	}
+
+	@Test
+	public void testDropIsRecordedInChangeLog() throws IOException {
+		Path log = Files.createTempFile("cache_collector", ".changes");
+		try {
+			ChangeLog changeLog = new ChangeLog(log);
+			new CacheCollector(new ChangeTrackingCacheStore(store, changeLog)).collect(Arrays.asList("root"));
+			assertEquals(2, changeLog.getCount(ChangeLog.Kind.REMOVED));
+			changeLog.close();
+			assertEquals(ChangeLog.Kind.REMOVED, changeLog.readChangesSince(0).get("old album"));
+		} finally {
+			Files.delete(log);
+		}
+	}
+
+	@Test
+	public void testEveryRootIsKept() {
+		assertTrue(new CacheCollector(store).collect(Arrays.asList("root", "old album")).isEmpty());
+		assertEquals(7, store.size());
+	}
+}
@@ -0,0 +1,160 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.jdom2.Element;
+import org.junit.Test;
+
+public class CacheStoreTest {
+
+	private static Element page(String url, String title) {
+		Element e = new Element("TEST");
+		e.setAttribute("url", url);
+		e.setAttribute("title", title);
+		return e;
+	}
+
+	@Test
+	public void testMemoryStoreKeepsCopies() {
+		MemoryCacheStore store = new MemoryCacheStore();
+		Element e = page("someurl", "first");
+		store.put(e);
+		e.setAttribute("title", "modified after put");
+		assertEquals("first", store.get("someurl").getAttributeValue("title"));
+		assertSame(store.get("someurl"), store.get("someurl")); // shared, not copied
+		assertNull(store.get("otherurl"));
+	}
+
+	@Test
+	public void testMemoryStoreReplaces() {
+		MemoryCacheStore store = new MemoryCacheStore();
+		store.put(page("someurl", "first"));
+		store.put(page("someurl", "second"));
+		assertEquals(1, store.size());
+		assertEquals("second", store.get("someurl").getAttributeValue("title"));
+	}
+
+	@Test
+	public void testMemoryStoreRemoves() {
+		MemoryCacheStore store = new MemoryCacheStore();
+		store.put(page("url1", "1"));
+		store.put(page("url2", "2"));
+		store.remove("url1");
+		store.remove("no such url");
+		assertNull(store.get("url1"));
+		assertEquals(Arrays.asList("url2"), new ArrayList<>(store.urls()));
+	}
+
+	@Test
+	public void testBoundedStoreEvictsLeastRecentlyUsed() {
+		BoundedCacheStore store = new BoundedCacheStore(2);
+		store.put(page("url1", "1"));
+		store.put(page("url2", "2"));
+		assertNotNull(store.get("url1")); // url2 is least recently used now
+		store.put(page("url3", "3"));
+		assertEquals(2, store.size());
+		assertNotNull(store.get("url1"));
+		assertNull(store.get("url2"));
+		assertNotNull(store.get("url3"));
+	}
+
+	@Test
+	public void testBoundedStoreCountsHitsMissesEvictions() {
+		BoundedCacheStore store = new BoundedCacheStore(1);
+		store.put(page("url1", "1"));
+		assertNotNull(store.get("url1"));
+		store.put(page("url2", "2"));
+		assertNull(store.get("url1"));
+		assertEquals(1, store.getHits());
+		assertEquals(1, store.getMisses());
+		assertEquals(1, store.getEvictions());
+	}
+
+	@Test
+	public void testBoundedStoreReadsMissesFromBackingStore() {
+		MemoryCacheStore backing = new MemoryCacheStore();
+		backing.put(page("url1", "1"));
+		BoundedCacheStore store = new BoundedCacheStore(1, backing);
+		store.put(page("url2", "2")); // written through
+		assertEquals(2, backing.size());
+		assertNotNull(store.get("url1")); // miss, url2 evicted
+		assertNotNull(store.get("url1"));
+		assertEquals("2", store.get("url2").getAttributeValue("title"));
+		assertEquals(1, store.getHits());
+		assertEquals(2, store.getMisses());
+		assertEquals(2, store.getEvictions());
+		
+		store.remove("url1");
+		assertNull(store.get("url1"));
+		assertEquals(Arrays.asList("url2"), new ArrayList<>(store.urls()));
+	}
+
+	@Test
+	public void testBoundedStoreDontKeepPageRemovedWhileReadFromBackingStore() {
+		final BoundedCacheStore[] store = new BoundedCacheStore[1];
+		MemoryCacheStore backing = new MemoryCacheStore() {
+			@Override
+			public Element get(String url) {
+				Element e = super.get(url);
+				if (e != null)
+					store[0].remove(url); // as another thread would, while the miss is being read
+				return e;
+			}
+		};
+		backing.put(page("url1", "1"));
+		store[0] = new BoundedCacheStore(2, backing);
+		store[0].get("url1");
+		assertEquals(0, store[0].size());
+		assertNull(store[0].get("url1"));
+	}
+
+	@Test(timeout = 5000)
+	public void testBoundedStoreWritesPageInSameOrderToBackingStore() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1), release = new CountDownLatch(1);
+		final MemoryCacheStore backing = new MemoryCacheStore() {
+			@Override
+			public void put(Element e) {
+				if ("first".equals(e.getAttributeValue("title"))) {
+					writing.countDown();
+					try {
+						release.await(); // as a slow disk write
+					} catch (InterruptedException e1) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.put(e);
+			}
+		};
+		final BoundedCacheStore store = new BoundedCacheStore(2, backing);
+		Thread first = new Thread() {
+			@Override
+			public void run() {
+				store.put(page("someurl", "first"));
+			}
+		};
+		Thread second = new Thread() {
+			@Override
+			public void run() {
+				store.put(page("someurl", "second"));
+			}
+		};
+		first.start();
+		writing.await();
+		second.start();
+		second.join(200); // waits for the first write, if it is ordered
+		release.countDown();
+		first.join();
+		second.join();
+		assertEquals("second", store.get("someurl").getAttributeValue("title"));
+		assertEquals("second", backing.get("someurl").getAttributeValue("title"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundedStoreDontAcceptZeroCapacity() {
+		new BoundedCacheStore(0);
+	}
+}
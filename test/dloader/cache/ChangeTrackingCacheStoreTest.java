@@ -0,0 +1,112 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.jdom2.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dloader.cache.ChangeLog.Kind;
+
+public class ChangeTrackingCacheStoreTest {
+
+	Path logFile = ChangeLog.changeLogFor(Paths.get("test_cache.xml"));
+
+	private static Element page(String url, String title, String checked) {
+		Element e = new Element("Track");
+		e.setAttribute("url", url);
+		e.setAttribute("title", title);
+		e.setAttribute("checked", checked);
+		return e;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		Files.deleteIfExists(logFile);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(logFile);
+	}
+
+	@Test
+	public void testOnlyRealChangesAreRecorded() throws Exception {
+		MemoryCacheStore backing = new MemoryCacheStore();
+		ChangeLog log = new ChangeLog(logFile);
+		ChangeTrackingCacheStore store = new ChangeTrackingCacheStore(backing, log);
+		assertEquals(1, log.getGeneration());
+
+		store.put(page("t1", "One", "100"));
+		store.put(page("t2", "Two", "100"));
+		store.put(page("t1", "One", "200")); // only validated again
+		store.put(page("t2", "Two (edit)", "200"));
+		store.remove("t3"); // never there
+		assertEquals(2, log.getCount(Kind.ADDED));
+		assertEquals(1, log.getCount(Kind.CHANGED));
+		assertEquals(0, log.getCount(Kind.REMOVED));
+		assertEquals("1", backing.get("t1").getAttributeValue(ChangeTrackingCacheStore.GENERATION_ATTRIBUTE));
+		assertEquals("200", backing.get("t1").getAttributeValue("checked"));
+		log.close();
+
+		// next run
+		log = new ChangeLog(logFile);
+		store = new ChangeTrackingCacheStore(backing, log);
+		assertEquals(2, log.getGeneration());
+		store.put(page("t1", "One", "300"));
+		store.remove("t2");
+		log.close();
+		assertEquals("1", backing.get("t1").getAttributeValue(ChangeTrackingCacheStore.GENERATION_ATTRIBUTE));
+
+		Map<String, Kind> changes = log.readChangesSince(1);
+		assertEquals(1, changes.size());
+		assertEquals(Kind.REMOVED, changes.get("t2"));
+		changes = log.readChangesSince(0);
+		assertEquals(Kind.ADDED, changes.get("t1"));
+		assertEquals(Kind.REMOVED, changes.get("t2"));
+	}
+
+	@Test(timeout = 5000)
+	public void testWriteIsNotHeldUpByWriteOfOtherPage() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1), release = new CountDownLatch(1);
+		MemoryCacheStore backing = new MemoryCacheStore() {
+			@Override
+			public Element get(String url) {
+				if (url.equals("slow")) {
+					reading.countDown();
+					try {
+						release.await(); // as a page not loaded yet
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.get(url);
+			}
+		};
+		final ChangeTrackingCacheStore store = new ChangeTrackingCacheStore(backing, new ChangeLog(logFile));
+		String fast = "fast";
+		for (int i = 0; store.lockFor(fast) == store.lockFor("slow"); i++)
+			fast = "fast" + i;
+		Thread slowWriter = new Thread() {
+			@Override
+			public void run() {
+				store.put(page("slow", "Slow", "100"));
+			}
+		};
+		slowWriter.start();
+		reading.await();
+		store.put(page(fast, "Fast", "100"));
+		assertNotNull(backing.get(fast));
+		release.countDown();
+		slowWriter.join();
+		assertNotNull(backing.get("slow"));
+		store.getChangeLog().close();
+	}
+}
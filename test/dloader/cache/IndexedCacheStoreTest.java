@@ -0,0 +1,77 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import dloader.cache.IndexedCacheStore.Key;
+
+public class IndexedCacheStoreTest {
+
+	private MemoryCacheStore backing;
+
+	private static Element track(String url, String artist, String album, String mediaLink) {
+		Element e = new Element("Track");
+		e.setAttribute("url", url);
+		e.setAttribute("artist", artist);
+		e.setAttribute("album", album);
+		e.setAttribute("mediaLink", mediaLink);
+		return e;
+	}
+
+	@Before
+	public void setUp() {
+		backing = new MemoryCacheStore();
+		backing.put(track("t1", "Artist A", "First", "http://Media1.example.com/t1.mp3"));
+		backing.put(track("t2", "Artist B", "First", "http://media2.example.com/t2.mp3"));
+		Element album = new Element("Album");
+		album.setAttribute("url", "a1");
+		backing.put(album);
+	}
+
+	@Test
+	public void testIndexesExistingPages() {
+		IndexedCacheStore store = new IndexedCacheStore(backing);
+		assertEquals(new HashSet<>(Arrays.asList("t1", "t2")), store.find(Key.CLASS, "Track"));
+		assertEquals(new HashSet<>(Arrays.asList("t1")), store.find(Key.HOST, "media1.example.com"));
+		assertTrue(store.find(Key.COVER, "").contains("a1")); // tracks have no cover either
+		assertTrue(store.find(Key.ARTIST, "Artist C").isEmpty());
+	}
+
+	@Test
+	public void testCriteriaAreCombined() {
+		IndexedCacheStore store = new IndexedCacheStore(backing);
+		Map<Key, String> criteria = new EnumMap<>(Key.class);
+		criteria.put(Key.ALBUM, "First");
+		criteria.put(Key.ARTIST, "Artist B");
+		assertEquals(new HashSet<>(Arrays.asList("t2")), store.find(criteria));
+		criteria.put(Key.CLASS, "Album");
+		assertTrue(store.find(criteria).isEmpty());
+	}
+
+	@Test
+	public void testIndexFollowsPutAndRemove() {
+		IndexedCacheStore store = new IndexedCacheStore(backing);
+		store.put(track("t1", "Artist C", "Second", "http://media1.example.com/t1.mp3"));
+		assertEquals(new HashSet<>(Arrays.asList("t1")), store.find(Key.ARTIST, "Artist C"));
+		assertTrue(store.find(Key.ARTIST, "Artist A").isEmpty());
+		assertFalse(store.countValues(Key.ARTIST).containsKey("Artist A"));
+		assertEquals("Artist C", backing.get("t1").getAttributeValue("artist"));
+		
+		store.remove("t2");
+		assertTrue(store.find(Key.ALBUM, "First").isEmpty());
+		assertNull(backing.get("t2"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeyForNameDontAcceptUnknown() {
+		Key.forName("genre");
+	}
+}
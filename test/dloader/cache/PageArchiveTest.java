@@ -0,0 +1,71 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageArchiveTest {
+
+	private Path directory;
+	private PageArchive archive;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("archive");
+		archive = new PageArchive(directory.resolve("pages"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Test
+	public void testDirectoryFor() {
+		assertEquals(Paths.get("dir", "cache.pages"), PageArchive.directoryFor(Paths.get("dir", "cache.xml")));
+		assertEquals(Paths.get("dir", "cache.pages"), PageArchive.directoryFor(Paths.get("dir", "cache.xml.gz")));
+		assertEquals(Paths.get("dir", "cache.pages"), PageArchive.directoryFor(Paths.get("dir", "cache.bin")));
+	}
+
+	@Test
+	public void testPutGet() throws IOException {
+		String url = "http://artist.bandcamp.com/album/x";
+		assertFalse(archive.contains(url));
+		assertNull(archive.get(url));
+
+		byte[] body = "<html><body>x</body></html>".getBytes(StandardCharsets.UTF_8);
+		archive.put(url, body);
+		assertTrue(archive.contains(url));
+		assertArrayEquals(body, archive.get(url));
+		assertEquals(directory.resolve("pages").resolve("artist.bandcamp.com"), archive.fileOf(url).getParent());
+		assertTrue(archive.fileOf(url).toString().endsWith(PageArchive.FILE_EXTENSION));
+
+		byte[] newBody = "<html><body>y</body></html>".getBytes(StandardCharsets.UTF_8);
+		archive.put(url, newBody);
+		assertArrayEquals(newBody, archive.get(url));
+		assertNull(archive.get("http://artist.bandcamp.com/album/y"));
+	}
+}
@@ -0,0 +1,98 @@
+package dloader.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.jdom2.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedCacheStoreTest {
+
+	private Path directory;
+
+	private static Element page(String url, String title) {
+		Element e = new Element("Track");
+		e.setAttribute("url", url);
+		e.setAttribute("title", title);
+		return e;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("shards");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file: files)
+				Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testShardOf() {
+		assertEquals("artist.bandcamp.com", ShardedCacheStore.shardOf("http://Artist.bandcamp.com/album/x"));
+		assertEquals("artist.bandcamp.com", ShardedCacheStore.shardOf("https://user@artist.bandcamp.com:80?q"));
+		assertEquals("some_host", ShardedCacheStore.shardOf("http://some*host/"));
+		assertEquals(ShardedCacheStore.NO_HOST_SHARD, ShardedCacheStore.shardOf("file:///tmp/x"));
+	}
+
+	@Test
+	public void testOnlyChangedShardsAreSaved() throws IOException {
+		ShardedCacheStore store = new ShardedCacheStore(directory, ".xml");
+		store.put(page("http://a.bandcamp.com/track/1", "A1"));
+		store.put(page("http://b.bandcamp.com/track/1", "B1"));
+		store.flush();
+		store.close();
+		Path shardB = directory.resolve("b.bandcamp.com.xml");
+		assertTrue(Files.exists(directory.resolve("a.bandcamp.com.xml")));
+		assertTrue(Files.exists(shardB));
+
+		store = new ShardedCacheStore(directory, ".xml");
+		assertEquals(new HashSet<>(Arrays.asList("a.bandcamp.com", "b.bandcamp.com")), store.shardNames());
+		assertEquals("A1", store.get("http://a.bandcamp.com/track/1").getAttributeValue("title"));
+		store.put(page("http://a.bandcamp.com/track/2", "A2"));
+		assertEquals(1, store.getOpenShardCount());
+		Files.delete(shardB); // would be recreated if saved
+		store.flush();
+		store.close();
+		assertFalse(Files.exists(shardB));
+
+		store = new ShardedCacheStore(directory, ".xml");
+		assertEquals(new HashSet<>(Arrays.asList("http://a.bandcamp.com/track/1", "http://a.bandcamp.com/track/2")), 
+				new HashSet<>(store.urls()));
+		store.close();
+	}
+
+	@Test
+	public void testShardsShareThreads() throws IOException {
+		ShardedCacheStore store = new ShardedCacheStore(directory, ".xml");
+		for (int i = 0; i < 20; i++)
+			store.put(page("http://artist" + i + ".bandcamp.com/track/1", "T" + i));
+		store.flush();
+		store.close();
+
+		int before = cacheThreads();
+		store = new ShardedCacheStore(directory, ".xml");
+		assertEquals(20, store.urls().size()); // opens and loads every shard
+		assertTrue(cacheThreads() - before <= ShardedCacheStore.THREADS);
+		store.close();
+	}
+
+	private static int cacheThreads() {
+		int count = 0;
+		for (Thread t: Thread.getAllStackTraces().keySet())
+			if (t.getName().startsWith("cache ")) count++;
+		return count;
+	}
+}
@@ -4,7 +4,9 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -21,6 +23,7 @@ import dloader.page.AbstractPage;
 import dloader.page.AbstractPage.ProblemsReadingDocumentException;
 import dloader.pagejob.ProgressReporter;
 import dloader.*;
+import dloader.cache.PageArchive;
 
 public class AbstractPageTest {
 	
@@ -265,7 +268,7 @@ public class AbstractPageTest {
 		p.downloadPage(new DummyProgressReporter());
 		assertEquals(20, p.childPages.size());
 		assertEquals("Homestuck", p.getTitle());
-		assertNotNull(p.getChildByURL(new URL("file:/album/homestuck-vol-9")));
+		assertNotNull(p.getChildByURL(URI.create("file:/album/homestuck-vol-9")));
 	}
 	
 	@Test (expected = ProblemsReadingDocumentException.class)
@@ -383,6 +386,43 @@ public class AbstractPageTest {
 		
 	}
 	
+	@Test
+	public void testValidatorsSurviveCacheRoundTrip() {
+		Element e = new Element("Discography");
+		e.setAttribute("url", "http://homestuck-x.bandcamp.com");
+		e.setAttribute("title", "SomeTitle");
+		e.setAttribute("etag", "\"abc\"");
+		e.setAttribute("lastModified", "Sat, 29 Oct 1994 19:43:31 GMT");
+		e.setAttribute("checked", "123456789");
+		Main.cache.put(e);
+		
+		AbstractPage p = new DiscographyLocal("http://homestuck-x.bandcamp.com", null, null);
+		assertTrue(p.loadFromCache());
+		assertEquals(123456789L, p.getLastChecked());
+		Main.cache.remove("http://homestuck-x.bandcamp.com");
+		p.saveToCache();
+		Element saved = Main.cache.get("http://homestuck-x.bandcamp.com");
+		assertEquals("\"abc\"", saved.getAttributeValue("etag"));
+		assertEquals("Sat, 29 Oct 1994 19:43:31 GMT", saved.getAttributeValue("lastModified"));
+		assertEquals("123456789", saved.getAttributeValue("checked"));
+	}
+	
+	@Test
+	public void testBodyHashSurvivesCacheRoundTrip() {
+		Element e = new Element("Discography");
+		e.setAttribute("url", "http://homestuck-x.bandcamp.com");
+		e.setAttribute("title", "SomeTitle");
+		e.setAttribute("hash", "0123456789abcdef0123456789abcdef01234567");
+		Main.cache.put(e);
+		
+		AbstractPage p = new DiscographyLocal("http://homestuck-x.bandcamp.com", null, null);
+		assertTrue(p.loadFromCache());
+		Main.cache.remove("http://homestuck-x.bandcamp.com");
+		p.saveToCache();
+		Element saved = Main.cache.get("http://homestuck-x.bandcamp.com");
+		assertEquals("0123456789abcdef0123456789abcdef01234567", saved.getAttributeValue("hash"));
+	}
+	
 	@Test
 	public void testDownloadPageFromLocal() throws ProblemsReadingDocumentException, InterruptedException {
 		AbstractPage p = new DiscographyLocal(
@@ -395,6 +435,52 @@ public class AbstractPageTest {
 		assertEquals(20, p.childPages.size());
 	}
 	
+	@Test
+	public void testParseFromMismatchKeepsValidators() throws Exception {
+		String u = "http://homestuck-x.bandcamp.com/";
+		byte[] body = Files.readAllBytes(testDirFilesPath.resolve("Homestuck.htm"));
+		AbstractPage guessed = new Track(u, null, null);
+		AbstractPage.PageTypeMismatchException e = guessed.new PageTypeMismatchException(
+				Discography.class, body, BodyHash.of(body), "\"abc\"", "Mon, 01 Oct 2012 10:00:00 GMT");
+		AbstractPage p = new DiscographyLocal(u, System.getProperty("java.io.tmpdir"), null);
+		p.parseFrom(e);
+		assertEquals("Homestuck", p.getTitle());
+
+		Main.cache.remove("http://homestuck-x.bandcamp.com");
+		p.saveToCache();
+		Element saved = Main.cache.get("http://homestuck-x.bandcamp.com");
+		assertEquals("\"abc\"", saved.getAttributeValue("etag"));
+		assertEquals("Mon, 01 Oct 2012 10:00:00 GMT", saved.getAttributeValue("lastModified"));
+		assertEquals(BodyHash.of(body), saved.getAttributeValue("hash"));
+	}
+	
+	@Test
+	public void testReparseFromArchive() throws Exception {
+		Path directory = Files.createTempDirectory("archive");
+		PageArchive archive = new PageArchive(directory);
+		String u = "http://homestuck-x.bandcamp.com/";
+		try {
+			AbstractPage p = new DiscographyLocal(u, directory.toString(), null);
+			assertFalse(p.reparseFromArchive(archive));
+			
+			archive.put(p.url.toString(), Files.readAllBytes(testDirFilesPath.resolve("Homestuck.htm")));
+			assertTrue(p.reparseFromArchive(archive));
+			assertEquals("Homestuck", p.getTitle());
+			assertEquals(20, p.childPages.size());
+		} finally {
+			try (DirectoryStream<Path> hosts = Files.newDirectoryStream(directory)) {
+				for (Path host: hosts) {
+					try (DirectoryStream<Path> files = Files.newDirectoryStream(host)) {
+						for (Path file: files)
+							Files.delete(file);
+					}
+					Files.delete(host);
+				}
+			}
+			Files.delete(directory);
+		}
+	}
+	
 	@Test
 	public void testDownloadPageFromNet() throws ProblemsReadingDocumentException, InterruptedException {
 		AbstractPage p2 = new Album("http://homestuck.bandcamp.com/album/one-year-older/", null, null);
@@ -422,4 +508,36 @@ public class AbstractPageTest {
 		assertTrue(p.updateFromNet(pr));
 		assertFalse(p.updateFromNet(pr));
 	}
+
+	@Test
+	public void testChildLookupFollowsChildrenRead() {
+		Element e = new Element("Discography");
+		e.setAttribute("url", "http://homestuck-x.bandcamp.com");
+		e.setAttribute("title", "SomeTitle");
+		e.addContent(childref("Album", "http://homestuck-x.bandcamp.com/album/a"));
+		e.addContent(childref("Track", "http://homestuck-x.bandcamp.com/album/a"));
+		e.addContent(childref("Album", "http://homestuck-x.bandcamp.com/album/b"));
+		Main.cache.put(e);
+
+		AbstractPage p = new Discography("http://homestuck-x.bandcamp.com", System.getProperty("java.io.tmpdir"), null);
+		assertNull(p.getChildByURLString("http://homestuck-x.bandcamp.com/album/a"));
+		assertTrue(p.loadFromCache());
+		assertTrue(p.getChildByURLString("http://homestuck-x.bandcamp.com/album/a") instanceof Album); // the first one
+		AbstractPage b = p.getChildByURLString("http://homestuck-x.bandcamp.com/album/b");
+		assertSame(p.childPages.get(2), b);
+
+		e.removeContent();
+		e.addContent(childref("Album", "http://homestuck-x.bandcamp.com/album/b"));
+		Main.cache.put(e);
+		assertTrue(p.loadFromCache());
+		assertNull(p.getChildByURLString("http://homestuck-x.bandcamp.com/album/a"));
+		assertSame(b, p.getChildByURLString("http://homestuck-x.bandcamp.com/album/b")); // kept by merge
+	}
+
+	private static Element childref(String className, String url) {
+		Element e = new Element("childref");
+		e.setAttribute("class", className);
+		e.setAttribute("url", url);
+		return e;
+	}
 }
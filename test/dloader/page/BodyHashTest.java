@@ -0,0 +1,30 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BodyHashTest {
+
+	private static String hash(String body) {
+		return BodyHash.of(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSameBodySameHash() {
+		assertEquals(hash("<html><body>a</body></html>"), hash("<html><body>a</body></html>"));
+		assertNotEquals(hash("<html><body>a</body></html>"), hash("<html><body>b</body></html>"));
+		assertEquals(40, hash("").length());
+	}
+
+	@Test
+	public void testCommentsAreIgnored() {
+		String plain = hash("<html><body>a</body></html>");
+		assertEquals(plain, hash("<html><!-- rendered in 12ms --><body>a</body></html>"));
+		assertEquals(plain, hash("<html><body>a</body></html><!-- server 7 -->"));
+		assertEquals(hash("<html><body>a"), hash("<html><body>a<!-- unclosed"));
+		assertNotEquals(plain, hash("<html><body>a<!-- x --></body></html>b"));
+	}
+}
@@ -0,0 +1,47 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaderSAX2Factory;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+public class HtmlParsersTest {
+
+	@Test
+	public void testReusedBuilderAgreesWithNewOne() throws Exception {
+		XMLOutputter out = new XMLOutputter();
+		for (String page: StreamingPathMatcherTest.PAGES) {
+			byte[] body = Files.readAllBytes(Paths.get(page));
+			Document expected = new SAXBuilder(new XMLReaderSAX2Factory(false, "org.ccil.cowan.tagsoup.Parser"))
+					.build(new ByteArrayInputStream(body));
+			// twice, the second time with the parser already used
+			for (int i = 0; i < 2; i++) {
+				Document doc = HtmlParsers.build(new ByteArrayInputStream(body));
+				// no DOCTYPE is reported by a reused parser, the rest is the same
+				assertEquals(page, out.outputString(expected.getRootElement()), out.outputString(doc.getRootElement()));
+			}
+		}
+	}
+
+	@Test
+	public void testReusedParserMatchesAgain() throws Exception {
+		byte[] body = Files.readAllBytes(Paths.get(StreamingPathMatcherTest.PAGES[0]));
+		String query = "//pre:script";
+		int count = -1;
+		for (int i = 0; i < 2; i++) {
+			StreamingPathMatcher matcher = new StreamingPathMatcher().add(query);
+			matcher.parse(new ByteArrayInputStream(body));
+			if (count >= 0)
+				assertEquals(count, matcher.getCount(query));
+			count = matcher.getCount(query);
+			assertTrue(count > 0);
+		}
+	}
+}
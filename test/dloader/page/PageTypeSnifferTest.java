@@ -0,0 +1,70 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class PageTypeSnifferTest {
+
+	private static Class<? extends AbstractPage> sniff(String file) throws Exception {
+		return PageTypeSniffer.sniff(Files.readAllBytes(Paths.get(file)));
+	}
+
+	private static Class<? extends AbstractPage> sniffText(String text) {
+		return PageTypeSniffer.sniff(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testSavedPages() throws Exception {
+		assertEquals(Discography.class, sniff("test/emancipator.htm"));
+		assertEquals(Album.class, sniff("test/emancipator-children/remixes-2.htm"));
+		assertEquals(Track.class, sniff("test/emancipator-children/elephant-survival.htm"));
+		assertEquals(Album.class, sniff("test/Homestuck.htm")); // artist front page showing an album
+	}
+
+	@Test
+	public void testMarkup() {
+		assertEquals(Track.class, sniffText("<head><meta content=\"song\" property=\"og:type\"></head>"));
+		assertEquals(Album.class, sniffText("<head><META PROPERTY='og:type' CONTENT='album'/></head>"));
+		assertEquals(Track.class, sniffText("<script>var TralbumData = { item_type: \"track\", id: 1 }</script>"));
+		assertEquals(Album.class, sniffText("<meta content='{\"item_type\":\"a\"}'>"));
+		assertNull(sniffText("<head><meta property=\"og:type\" content=\"website\"></head>"));
+		assertNull(sniffText("<html><body>nothing</body></html>"));
+	}
+
+	@Test
+	public void testOnlyHeadIsRead() {
+		StringBuilder s = new StringBuilder();
+		while (s.length() < PageTypeSniffer.SNIFF_BYTES)
+			s.append("<p>padding</p>");
+		s.append("<meta property=\"og:type\" content=\"song\">");
+		assertNull(sniffText(s.toString()));
+	}
+
+	@Test
+	public void testAccepts() {
+		AbstractPage discography = new Discography("http://a.bandcamp.com", null, null);
+		AbstractPage album = new Album("http://a.bandcamp.com/album/x", null, null);
+		assertTrue(PageTypeSniffer.accepts(discography, Discography.class));
+		assertTrue(PageTypeSniffer.accepts(discography, Album.class));
+		assertFalse(PageTypeSniffer.accepts(discography, Track.class));
+		assertTrue(PageTypeSniffer.accepts(album, Album.class));
+		assertFalse(PageTypeSniffer.accepts(album, Track.class));
+		assertFalse(PageTypeSniffer.accepts(album, Discography.class));
+	}
+
+	@Test
+	public void testReplaceChild() {
+		AbstractPage discography = new Discography("http://a.bandcamp.com", null, null);
+		AbstractPage guessed = new Album("http://a.bandcamp.com/x", null, discography);
+		discography.childPages.add(guessed);
+		AbstractPage track = new Track("http://a.bandcamp.com/x", null, discography);
+		assertTrue(discography.replaceChild(guessed, track));
+		assertSame(track, discography.getChildByURLString("http://a.bandcamp.com/x"));
+		assertFalse(discography.replaceChild(guessed, track));
+	}
+}
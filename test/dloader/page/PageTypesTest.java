@@ -0,0 +1,74 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PageTypesTest {
+
+	@Test
+	public void testForName() {
+		assertTrue(PageTypes.forName("Album").create("http://a.bandcamp.com/album/x", null, null) instanceof Album);
+		assertTrue(PageTypes.forName("dloader.page.Track").create("http://a.bandcamp.com/track/x", null, null) instanceof Track);
+		assertNull(PageTypes.forName(null));
+		assertNull(PageTypes.forName("NoSuchPage"));
+		assertNull(PageTypes.forName("java.lang.String")); // not a page
+	}
+
+	@Test
+	public void testUnknownNamesAreNotRemembered() {
+		PageTypes.forName("NoSuchPage");
+		int size = PageTypes.size();
+		for (int i = 0; i < 100; i++)
+			assertNull(PageTypes.forName("NoSuchPage" + i));
+		assertEquals(size, PageTypes.size());
+	}
+
+	@Test
+	public void testForNameFindsPageClassByReflection() {
+		String name = AbstractPageTest.DiscographyLocal.class.getName();
+		AbstractPage p = PageTypes.forName(name).create("http://a.bandcamp.com", null, null);
+		assertEquals(AbstractPageTest.DiscographyLocal.class, p.getClass());
+		assertSame(PageTypes.forName(name), PageTypes.forName(name));
+	}
+
+	@Test
+	public void testForURL() {
+		assertTrue(PageTypes.forURL("http://a.bandcamp.com/track/x").create("http://a.bandcamp.com/track/x", null, null) instanceof Track);
+		assertTrue(PageTypes.forURL("http://a.bandcamp.com/album/x").create("http://a.bandcamp.com/album/x", null, null) instanceof Album);
+		assertTrue(PageTypes.forURL("http://a.bandcamp.com").create("http://a.bandcamp.com", null, null) instanceof Discography);
+		assertTrue(PageTypes.forURL("http://a.bandcamp.com?x=1").create("http://a.bandcamp.com", null, null) instanceof Discography);
+		assertNull(PageTypes.forURL("http://a.bandcamp.com/music"));
+	}
+
+	@Test
+	public void testBakeAPage() {
+		AbstractPage p = AbstractPage.bakeAPage("Album", "http://a.bandcamp.com/whatever/", null, null);
+		assertTrue(p instanceof Album);
+		assertEquals("http://a.bandcamp.com/whatever", p.url.toString());
+		assertTrue(AbstractPage.bakeAPage(null, "a.bandcamp.com/track/x", null, null) instanceof Track);
+		assertTrue(AbstractPage.bakeAPage("NoSuchPage", "http://a.bandcamp.com", null, null) instanceof Discography);
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testBakeAPageFailsOnUnknownType() {
+		AbstractPage.bakeAPage(null, "http://a.bandcamp.com/music", null, null);
+	}
+
+	@Test
+	public void testRegister() {
+		PageTypes.register("Label", new PageFactory() {
+			@Override
+			public AbstractPage create(String url, String saveTo, AbstractPage parent) {
+				return new Discography(url, saveTo, parent);
+			}
+		});
+		PageTypes.addRule("/label/", "Label");
+		assertTrue(AbstractPage.bakeAPage(null, "http://a.bandcamp.com/label/x", null, null) instanceof Discography);
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testAddRuleOfUnknownType() {
+		PageTypes.addRule("/nothing/", "NoSuchPage");
+	}
+}
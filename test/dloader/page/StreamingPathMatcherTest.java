@@ -0,0 +1,88 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaderSAX2Factory;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+import dloader.XPathCache;
+
+public class StreamingPathMatcherTest {
+
+	static final String[] PAGES = {
+		"test/emancipator.htm",
+		"test/Homestuck.htm",
+		"test/emancipator-children/free-downloads.htm",
+		"test/emancipator-children/remixes-2.htm",
+		"test/emancipator-children/elephant-survival.htm"};
+
+	static final String[] QUERIES = {
+		"//pre:title",
+		"//pre:div[@id='tralbumArt']//pre:img",
+		"//pre:script",
+		"//pre:td//pre:div[@class='title']//pre:a",
+		"//pre:div[@id='discography']//pre:div[@class='trackTitle']/pre:a",
+		"//pre:div[@id='indexpage']//pre:h1/pre:a"};
+
+	@Test
+	public void testMatchesAgreeWithXPath() throws Exception {
+		XMLOutputter outputter = new XMLOutputter();
+		for (String page: PAGES) {
+			Document doc;
+			try (InputStream in = Files.newInputStream(Paths.get(page))) {
+				doc = new SAXBuilder(new XMLReaderSAX2Factory(false, "org.ccil.cowan.tagsoup.Parser")).build(in);
+			}
+			Namespace pre = Namespace.getNamespace("pre", doc.getRootElement().getNamespaceURI());
+			StreamingPathMatcher matcher = new StreamingPathMatcher();
+			for (String query: QUERIES)
+				matcher.add(query);
+			try (InputStream in = Files.newInputStream(Paths.get(page))) {
+				matcher.parse(in);
+			}
+			for (String query: QUERIES) {
+				List<Element> expected = XPathCache.get(query, pre).evaluate(doc);
+				List<Element> actual = matcher.getMatches(query);
+				assertEquals(page + " " + query, expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).getAttributeValue("href"), actual.get(i).getAttributeValue("href"));
+					assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+				}
+				if (!expected.isEmpty()) // namespaces aside, the same markup
+					assertEquals(outputter.outputString(expected.get(0)).replace(" xmlns=\"http://www.w3.org/1999/xhtml\"", ""),
+							outputter.outputString(actual.get(0)));
+			}
+		}
+	}
+
+	@Test
+	public void testLimitAndCount() throws Exception {
+		String html = "<html><body><div id='a'><p>1</p><div><p>2<p>3</p></p></div></div><p>4</p></body></html>";
+		StreamingPathMatcher matcher = new StreamingPathMatcher()
+				.add("//div[@id='a']//p", 1).add("//body/p").add("//div", 0);
+		matcher.parse(new ByteArrayInputStream(html.getBytes(Charset.forName("UTF-8"))));
+		assertEquals(3, matcher.getCount("//div[@id='a']//p"));
+		assertEquals(1, matcher.getMatches("//div[@id='a']//p").size());
+		assertEquals("1", matcher.getMatches("//div[@id='a']//p").get(0).getText());
+		assertEquals("4", matcher.getMatches("//body/p").get(0).getText());
+		assertEquals(1, matcher.getMatches("//body/p").size());
+		assertEquals(2, matcher.getCount("//div"));
+		assertTrue(matcher.getMatches("//div").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedQuery() {
+		new StreamingPathMatcher().add("//pre:div[contains(@class,'x')]");
+	}
+}
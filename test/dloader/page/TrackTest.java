@@ -9,12 +9,15 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
 
+import org.jdom2.Element;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import dloader.page.Track;
 import dloader.*;
+import dloader.cache.CacheStore;
+import dloader.cache.MemoryCacheStore;
 
 import entagged.audioformats.AudioFile;
 import entagged.audioformats.AudioFileIO;
@@ -147,4 +150,54 @@ public class TrackTest {
 		assertEquals("DJ Sniff Mc'Snow", mp3Tag.getFirstArtist());
 	}
 
+	@Test
+	public void testSetProperty() {
+		assertEquals("Sburb", t.setProperty("album", "Alterniabound"));
+		assertEquals("Alterniabound", t.getProperty("album"));
+		assertNull(t.setProperty("album", ""));
+		assertEquals("Alterniabound", t.getProperty("album"));
+		assertEquals("Alterniabound", t.setProperty("album", null));
+		assertNull(t.getProperty("album"));
+		assertNull(t.setProperty("album", ""));
+		assertEquals("", t.getProperty("album"));
+
+		assertNull(t.setProperty("lyrics", "la la"));
+		assertEquals("la la", t.getProperty("lyrics"));
+		t.setProperty("lyrics", null);
+		assertNull(t.getProperty("lyrics"));
+	}
+
+	@Test
+	public void testLoadFromCacheIgnoresChildrenOfTrack() {
+		CacheStore cache = Main.cache;
+		try {
+			Main.cache = new MemoryCacheStore();
+			Element e = new Element("Track");
+			e.setAttribute("url", "http://sampleband.bandcamp.com/track/sampletesttrack");
+			e.setAttribute("title", "tagged");
+			e.setAttribute("mediaLink", "http://popplers5.bandcamp.com/download/track?id=1");
+			Element childref = new Element("childref");
+			childref.setAttribute("class", "Track");
+			childref.setAttribute("url", "http://sampleband.bandcamp.com/track/other");
+			e.addContent(childref);
+			Main.cache.put(e);
+
+			assertTrue(t.loadFromCache());
+			assertEquals("http://popplers5.bandcamp.com/download/track?id=1", t.getProperty("mediaLink"));
+			assertTrue(t.childPages.isEmpty());
+		} finally {
+			Main.cache = cache;
+		}
+	}
+
+	@Test
+	public void testLeafPagesShareAttributes() {
+		Track other = new Track("http://sampleband.bandcamp.com/track/other", new String("test"), null);
+		other.setProperty("artist", new String("Tyler Dever"));
+		assertSame(t.saveTo, other.saveTo);
+		assertSame(t.getProperty("artist"), other.getProperty("artist"));
+		assertSame(t.childPages, other.childPages);
+		assertTrue(t.childPages.isEmpty());
+	}
+
 }
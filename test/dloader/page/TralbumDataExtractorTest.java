@@ -0,0 +1,100 @@
+package dloader.page;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.input.sax.XMLReaderSAX2Factory;
+import org.junit.Test;
+
+import dloader.XPathCache;
+
+public class TralbumDataExtractorTest {
+
+	static final String[] FIXTURES = {
+		"test/emancipator-children/elephant-survival.htm",
+		"test/emancipator-children/free-downloads.htm",
+		"test/emancipator-children/remixes-2.htm",
+		"test/emancipator-children/soon-it-will-be-cold-enough.htm"};
+
+	/**
+	 * Also used by TralbumDataBenchmark.
+	 * @return texts of scripts Track.parseSelf() reads from the saved page, those with page data
+	 */
+	public static List<String> readPageScripts(String fileName) throws Exception {
+		SAXBuilder builder = new SAXBuilder(new XMLReaderSAX2Factory(false, "org.ccil.cowan.tagsoup.Parser"));
+		Document doc;
+		try (InputStream in = Files.newInputStream(Paths.get(fileName))) {
+			doc = builder.build(in);
+		}
+		Namespace pre = Namespace.getNamespace("pre", doc.getRootElement().getNamespaceURI());
+		List<String> result = new ArrayList<>();
+		for (Element script: XPathCache.get("//pre:div[@id='pgBd']/pre:script", pre).evaluate(doc))
+			if (script.getText().contains("TralbumData"))
+				result.add(script.getText());
+		return result;
+	}
+
+	@Test
+	public void testParserAgreesWithPatternsOnSavedPages() throws Exception {
+		for (String fileName: FIXTURES) {
+			List<String> scripts = readPageScripts(fileName);
+			assertFalse(fileName, scripts.isEmpty());
+			for (String script: scripts) {
+				Map<String, String> parsed = TralbumDataExtractor.parse(script);
+				Map<String, String> matched = TralbumDataExtractor.match(script, TralbumDataExtractor.KEYS);
+				for (String key: new String[] {"mediaLink", "artist", "album"})
+					if (matched.containsKey(key))
+						assertEquals(fileName + " " + key, matched.get(key), parsed.get(key));
+				// album pages have no title property, there the title pattern matches "album_title"
+				if (parsed.containsKey("title"))
+					assertEquals(fileName + " title", matched.get("title"), parsed.get("title"));
+				else
+					assertEquals(fileName + " title", parsed.get("album"), matched.get("title"));
+			}
+		}
+	}
+
+	@Test
+	public void testTrackPageProperties() throws Exception {
+		String script = readPageScripts(FIXTURES[0]).get(0);
+		Map<String, String> data = TralbumDataExtractor.extract(script);
+		assertEquals("Elephant Survival", data.get("title"));
+		assertEquals("emancipator", data.get("artist"));
+		assertTrue(data.get("mediaLink").startsWith("http://popplers5.bandcamp.com/download/track?enc=mp3-128"));
+		assertFalse(data.containsKey("comment")); // has_info is null
+	}
+
+	@Test
+	public void testLiteralSyntax() {
+		String script = "var x = function() { return {title: 'no'}; };\n"
+				+ "var EmbedData = { /* c */ title : \"Say \\\"hi\\\"\\u0021\", // comment\n"
+				+ "  n: 1.5, f: foo(1, [2]), album_title: null, };\n"
+				+ "var TralbumData = { 'artist': 'A\\/B', trackinfo: [{\"file\": {\"mp3-128\": \"http:\\/\\/x\\/1\"},"
+				+ " \"has_info\": \"info\"}] };";
+		Map<String, String> data = TralbumDataExtractor.parse(script);
+		assertEquals("Say \"hi\"!", data.get("title"));
+		assertEquals("A/B", data.get("artist"));
+		assertEquals("http://x/1", data.get("mediaLink"));
+		assertEquals("info", data.get("comment"));
+		assertTrue(data.containsKey("album"));
+		assertNull(data.get("album"));
+	}
+
+	@Test
+	public void testPatternsFillWhatObjectsLack() {
+		Map<String, String> data = TralbumDataExtractor.extract("broken = { artist : \"B\" ; title : \"T\"");
+		assertEquals("B", data.get("artist"));
+		assertEquals("T", data.get("title"));
+		assertFalse(data.containsKey("album"));
+	}
+}
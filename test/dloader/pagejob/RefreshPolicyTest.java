@@ -0,0 +1,48 @@
+package dloader.pagejob;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dloader.page.AbstractPage;
+import dloader.page.Album;
+import dloader.page.Discography;
+import dloader.page.Track;
+
+public class RefreshPolicyTest {
+
+	@Test
+	public void testParseSeparateMaxAges() {
+		RefreshPolicy policy = RefreshPolicy.parse("0, 24,168");
+		assertEquals(0, policy.getMaxAge(Discography.class));
+		assertEquals(TimeUnit.HOURS.toMillis(24), policy.getMaxAge(Album.class));
+		assertEquals(TimeUnit.HOURS.toMillis(168), policy.getMaxAge(Track.class));
+	}
+
+	@Test
+	public void testParseCommonMaxAge() {
+		RefreshPolicy policy = RefreshPolicy.parse("12");
+		for (Class<? extends AbstractPage> c: Arrays.asList(Discography.class, Album.class, Track.class))
+			assertEquals(TimeUnit.HOURS.toMillis(12), policy.getMaxAge(c));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseDontAcceptTwoValues() {
+		RefreshPolicy.parse("1,2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseDontAcceptGarbage() {
+		RefreshPolicy.parse("day");
+	}
+
+	@Test
+	public void testPageNeverCheckedIsNotFresh() {
+		RefreshPolicy policy = RefreshPolicy.parse("1");
+		assertFalse(policy.isFresh(new Album("http://homestuck.bandcamp.com/album/medium", null, null)));
+		assertFalse(new RefreshPolicy().isFresh(new Album("http://homestuck.bandcamp.com/album/medium", null, null)));
+	}
+}